@@ -0,0 +1,20 @@
+package tzeth.exhume.sax;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a field of a {@link RecordPath} class to a child element of the record, such as
+ * {@code Title} or {@code Author/Name}, or to an attribute of the record, such as {@code @id}, or
+ * of a child element, such as {@code Price/@currency}.
+ * <p>
+ * The field can have any type an {@link ElementEnd} method can take a single value of. A
+ * {@code List} field gets the values of all the matching elements of the record.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Bind {
+    public String value();
+}
@@ -0,0 +1,302 @@
+package tzeth.exhume.sax;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Parses values straight from a range of a character array, without creating a String in the
+ * common cases.
+ * <p>
+ * Input that the fast paths do not cover, such as exponents, very long numbers or non-ASCII
+ * digits, is handed to the JDK parsers, so the accepted syntax, the results and the exceptions
+ * are the same as theirs.
+ */
+final class CharParsers {
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+            1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+    private static final float[] FLOAT_POWERS_OF_TEN = {
+            1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+    private static final byte[] BASE64 = new byte[128];
+
+    static {
+        Arrays.fill(BASE64, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int n = 0; n < alphabet.length(); ++n) {
+            BASE64[alphabet.charAt(n)] = (byte) n;
+        }
+    }
+
+    public static int parseInt(char[] ch, int start, int length) {
+        int i = start;
+        int end = start + length;
+        boolean negative = i < end && ch[i] == '-';
+        if (negative || (i < end && ch[i] == '+')) {
+            ++i;
+        }
+        // Nine digits cannot overflow
+        if (i == end || end - i > 9) {
+            return Integer.parseInt(new String(ch, start, length));
+        }
+        int value = 0;
+        for (; i < end; ++i) {
+            int digit = ch[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(new String(ch, start, length));
+            }
+            value = 10 * value + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    public static long parseLong(char[] ch, int start, int length) {
+        int i = start;
+        int end = start + length;
+        boolean negative = i < end && ch[i] == '-';
+        if (negative || (i < end && ch[i] == '+')) {
+            ++i;
+        }
+        if (i == end || end - i > 18) {
+            return Long.parseLong(new String(ch, start, length));
+        }
+        long value = 0;
+        for (; i < end; ++i) {
+            int digit = ch[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.parseLong(new String(ch, start, length));
+            }
+            value = 10 * value + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses plain decimals of up to 15 digits exactly: the digits and the power of ten are both
+     * exact doubles, so their quotient is correctly rounded.
+     */
+    public static double parseDouble(char[] ch, int start, int length) {
+        int i = start;
+        int end = start + length;
+        boolean negative = i < end && ch[i] == '-';
+        if (negative || (i < end && ch[i] == '+')) {
+            ++i;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < end; ++i) {
+            char c = ch[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = 10 * mantissa + (c - '0');
+                ++digits;
+                if (scale >= 0) {
+                    ++scale;
+                }
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                return Double.parseDouble(new String(ch, start, length));
+            }
+        }
+        if (digits == 0 || digits > 15) {
+            return Double.parseDouble(new String(ch, start, length));
+        }
+        double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Like {@link #parseDouble}, for plain decimals of up to 7 digits.
+     */
+    public static float parseFloat(char[] ch, int start, int length) {
+        int i = start;
+        int end = start + length;
+        boolean negative = i < end && ch[i] == '-';
+        if (negative || (i < end && ch[i] == '+')) {
+            ++i;
+        }
+        int mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < end; ++i) {
+            char c = ch[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = 10 * mantissa + (c - '0');
+                ++digits;
+                if (scale >= 0) {
+                    ++scale;
+                }
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                return Float.parseFloat(new String(ch, start, length));
+            }
+            if (digits > 7) {
+                return Float.parseFloat(new String(ch, start, length));
+            }
+        }
+        if (digits == 0) {
+            return Float.parseFloat(new String(ch, start, length));
+        }
+        float value = scale > 0 ? mantissa / FLOAT_POWERS_OF_TEN[scale] : mantissa;
+        return negative ? -value : value;
+    }
+
+    public static BigDecimal parseBigDecimal(char[] ch, int start, int length) {
+        return new BigDecimal(ch, start, length);
+    }
+
+    /**
+     * Returns the boolean value of "true" or "1", or "false" or "0", or throws
+     * IllegalArgumentException.
+     */
+    public static boolean parseBoolean(char[] ch, int start, int length) {
+        if (matches("1", ch, start, length) || matches("true", ch, start, length)) {
+            return true;
+        }
+        if (matches("0", ch, start, length) || matches("false", ch, start, length)) {
+            return false;
+        }
+        throw new IllegalArgumentException(
+                "Not a valid boolean: " + new String(ch, start, length));
+    }
+
+    /**
+     * Parses an ISO local date such as 2017-03-14.
+     */
+    public static LocalDate parseLocalDate(char[] ch, int start, int length) {
+        if (length == 10 && ch[start + 4] == '-' && ch[start + 7] == '-') {
+            int year = digits(ch, start, 4);
+            int month = digits(ch, start + 5, 2);
+            int day = digits(ch, start + 8, 2);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                return LocalDate.of(year, month, day);
+            }
+        }
+        return LocalDate.parse(new String(ch, start, length));
+    }
+
+    /**
+     * Parses a UUID in its canonical form of 36 characters; other forms are left to
+     * {@link UUID#fromString(String)}.
+     */
+    public static UUID parseUuid(char[] ch, int start, int length) {
+        if (length == 36 && ch[start + 8] == '-' && ch[start + 13] == '-'
+                && ch[start + 18] == '-' && ch[start + 23] == '-') {
+            long high = hex(ch, start, 8);
+            long middle = hex(ch, start + 9, 4);
+            long version = hex(ch, start + 14, 4);
+            long variant = hex(ch, start + 19, 4);
+            long low = hex(ch, start + 24, 12);
+            if (high >= 0 && middle >= 0 && version >= 0 && variant >= 0 && low >= 0) {
+                return new UUID(high << 32 | middle << 16 | version, variant << 48 | low);
+            }
+        }
+        return UUID.fromString(new String(ch, start, length));
+    }
+
+    /**
+     * Decodes base64 text, which may be broken up by whitespace, as in {@code xs:base64Binary}.
+     * Throws IllegalArgumentException if the text is not valid base64.
+     */
+    public static byte[] parseBase64(char[] ch, int start, int length) {
+        int end = start + length;
+        int count = 0;
+        int padding = 0;
+        for (int i = start; i < end; ++i) {
+            char c = ch[i];
+            if (isWhitespace(c)) {
+                continue;
+            }
+            if (c == '=') {
+                ++padding;
+            } else if (padding > 0 || c >= BASE64.length || BASE64[c] < 0) {
+                throw new IllegalArgumentException("Not valid base64: illegal character "
+                        + (int) c + " at offset " + (i - start));
+            }
+            ++count;
+        }
+        if (count % 4 != 0 || padding > 2) {
+            throw new IllegalArgumentException("Not valid base64: the length is wrong");
+        }
+        byte[] bytes = new byte[count / 4 * 3 - padding];
+        int bits = 0;
+        int pending = 0;
+        int b = 0;
+        for (int i = start; i < end; ++i) {
+            char c = ch[i];
+            if (c == '=' || isWhitespace(c)) {
+                continue;
+            }
+            bits = bits << 6 | BASE64[c];
+            if (++pending == 4) {
+                bytes[b++] = (byte) (bits >> 16);
+                bytes[b++] = (byte) (bits >> 8);
+                bytes[b++] = (byte) bits;
+                bits = 0;
+                pending = 0;
+            }
+        }
+        if (pending == 2) {
+            bytes[b] = (byte) (bits >> 4);
+        } else if (pending == 3) {
+            bytes[b++] = (byte) (bits >> 10);
+            bytes[b] = (byte) (bits >> 2);
+        }
+        return bytes;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    /**
+     * Returns the value of the hex digits in the range, or -1 if there are other characters.
+     */
+    private static long hex(char[] ch, int start, int count) {
+        long value = 0;
+        for (int i = start; i < start + count; ++i) {
+            int digit = Character.digit(ch[i], 16);
+            if (digit < 0 || ch[i] > 'f') {
+                return -1;
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value of the ASCII digits in the range, or -1 if there are other characters.
+     */
+    private static int digits(char[] ch, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; ++i) {
+            int digit = ch[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = 10 * value + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Returns true if the range holds the same characters as the string.
+     */
+    public static boolean matches(String s, char[] ch, int start, int length) {
+        if (s.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (s.charAt(i) != ch[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private CharParsers() {/**/}
+
+}
@@ -0,0 +1,299 @@
+package tzeth.exhume.sax;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static tzeth.preconds.MorePreconditions.checkNotEmpty;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+import org.xml.sax.SAXException;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * An immutable, thread-safe parser for a fixed set of handler classes.
+ * <p>
+ * The handler classes are compiled once, when the parser is built. Every parse runs in its own
+ * {@link ParseSession}, with handler objects created by the factories given to the builder, so a
+ * single instance can be shared by any number of threads:
+ *
+ * <pre>
+ * CompiledParser parser = CompiledParser.builder()
+ *         .handler(BookPriceGatherer.class, BookPriceGatherer::new)
+ *         .build();
+ * ...
+ * int total = parser.parseFile(file).handler(BookPriceGatherer.class).totalPrice;
+ * </pre>
+ */
+public final class CompiledParser {
+    private final ParsePlan plan;
+    private final ImmutableList<Supplier<?>> factories;
+    private final List<BinaryOperator<Object>> merges;
+    private final List<String> groups;
+    private final Engine engine;
+    private final boolean pipelined;
+    @Nullable
+    private final String partitionKeyPath;
+    private final int partitionWorkers;
+    @Nullable
+    private final Duration timeLimit;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private CompiledParser(Builder builder) {
+        this.plan = builder.plan.build();
+        this.factories = ImmutableList.copyOf(builder.factories);
+        this.merges = Collections.unmodifiableList(new ArrayList<>(builder.merges));
+        this.groups = Collections.unmodifiableList(new ArrayList<>(builder.groups));
+        this.engine = builder.engine;
+        this.pipelined = builder.pipelined;
+        this.partitionKeyPath = builder.partitionKeyPath;
+        this.partitionWorkers = builder.partitionWorkers;
+        this.timeLimit = builder.timeLimit;
+    }
+
+    /**
+     * Returns a session for a single parse. Parsing through a session, rather than with the parse
+     * methods of this class, makes it possible to {@link ParseSession#cancel() cancel} the parse
+     * from another thread.
+     */
+    public ParseSession newSession() {
+        ParseSession session;
+        if (partitionKeyPath != null) {
+            Object[] handlers = new Object[factories.size() + 1];
+            Partitioner partitioner = new Partitioner(handlers, partitionWorkers, this::newHandler,
+                    merges);
+            handlers[factories.size()] = partitioner;
+            session = new ParseSession(plan, handlers, engine);
+            session.executeHandlers(partitioner);
+        } else {
+            Object[] handlers = new Object[factories.size()];
+            for (int slot = 0; slot < handlers.length; ++slot) {
+                handlers[slot] = newHandler(slot);
+            }
+            session = new ParseSession(plan, handlers, engine);
+            if (groups.stream().anyMatch(g -> g != null)) {
+                session.grouped(groups);
+            } else if (pipelined) {
+                session.pipelined();
+            }
+        }
+        if (timeLimit != null) {
+            session.timeLimit(timeLimit);
+        }
+        return session;
+    }
+
+    /**
+     * Returns a feeder for a document that arrives in chunks, with handler objects of its own; see
+     * {@link ParseFeeder}. The parser cannot be pipelined, partitioned or have handler groups.
+     */
+    public ParseFeeder newFeeder() {
+        return newSession().feeder();
+    }
+
+    private Object newHandler(int slot) {
+        Object h = checkNotNull(factories.get(slot).get(), "The handler factory returned null");
+        return plan.handlerTypes().get(slot).cast(h);
+    }
+
+    public ParseSession parseXml(String xml) throws SAXException {
+        ParseSession session = newSession();
+        session.parseXml(xml);
+        return session;
+    }
+
+    public ParseSession parseFile(File file) throws SAXException, IOException {
+        ParseSession session = newSession();
+        session.parseFile(file);
+        return session;
+    }
+
+    public ParseSession parseStream(InputStream stream) throws SAXException, IOException {
+        ParseSession session = newSession();
+        session.parseStream(stream);
+        return session;
+    }
+
+    public ParseSession parseMappedFile(File file) throws SAXException, IOException {
+        ParseSession session = newSession();
+        session.parseMappedFile(file);
+        return session;
+    }
+
+    public ParseSession parseBuffer(ByteBuffer buffer) throws SAXException, IOException {
+        ParseSession session = newSession();
+        session.parseBuffer(buffer);
+        return session;
+    }
+
+    /**
+     * Parses a file that is a long list of sibling records, such as {@code /Inventory/Books/Book},
+     * in chunks on the given pool. Chunks are always parsed by the {@link Engine#NATIVE native}
+     * engine.
+     * <p>
+     * Handlers added with a merge function get one object per chunk; the returned session holds
+     * the objects merged in document order. All other handlers get their events in document
+     * order, on the calling thread, on a single object. The records must not be nested, and their
+     * start tag must not occur in comments or CDATA sections. The parser cannot be pipelined,
+     * partitioned or have handler groups.
+     */
+    public ParseSession parseFileInParallel(File file, String recordPath, ForkJoinPool pool)
+            throws SAXException, IOException {
+        return parseFileInParallel(file, recordPath, pool, ParallelFileParse.DEFAULT_CHUNK_SIZE);
+    }
+
+    ParseSession parseFileInParallel(File file, String recordPath, ForkJoinPool pool,
+            long chunkSize) throws SAXException, IOException {
+        checkState(partitionKeyPath == null, "A partitioned parser cannot parse in parallel");
+        checkState(!pipelined && groups.stream().allMatch(g -> g == null),
+                "A pipelined parser, or one with handler groups, cannot parse in parallel");
+        return new ParallelFileParse(plan, this::newHandler, merges, recordPath, chunkSize)
+                .parse(file, pool);
+    }
+
+    public static final class Builder {
+        private final ParsePlan.Builder plan = new ParsePlan.Builder();
+        private final List<Supplier<?>> factories = new ArrayList<>();
+        private final List<BinaryOperator<Object>> merges = new ArrayList<>();
+        private final List<String> groups = new ArrayList<>();
+        private Engine engine = Engine.SAX;
+        private boolean pipelined;
+        @Nullable
+        private String partitionKeyPath;
+        private int partitionWorkers;
+        private boolean partitionerAdded;
+        @Nullable
+        private Duration timeLimit;
+
+        private Builder() {/**/}
+
+        public Builder engine(Engine engine) {
+            this.engine = checkNotNull(engine);
+            return this;
+        }
+
+        /**
+         * Ends every parse that takes longer than the given time, with the outcome
+         * {@link ParseOutcome#TIMED_OUT}. Does not apply to
+         * {@link CompiledParser#parseFileInParallel parallel parses}.
+         */
+        public Builder timeLimit(Duration timeLimit) {
+            checkArgument(!timeLimit.isNegative() && !timeLimit.isZero(),
+                    "The time limit must be positive");
+            this.timeLimit = timeLimit;
+            return this;
+        }
+
+        /**
+         * Runs the handlers on a dispatch thread of their own, so that parsing and slow handlers
+         * overlap. The handlers still see the events in document order; attributes and values are
+         * copied for them, so start handlers must not depend on the attributes object itself.
+         */
+        public Builder pipelined(boolean pipelined) {
+            this.pipelined = pipelined;
+            return this;
+        }
+
+        /**
+         * Runs the handlers on the given number of worker threads, routing every record to a
+         * worker by a key in it. The key path names the record element and the key element in
+         * it, like {@code Book/Isbn}: all records with the same key are handled by the same
+         * worker, in document order, so handlers can keep per-key state without locks.
+         * <p>
+         * Every worker has its own handler objects, which are merged when the parse is done, so
+         * all handlers must be added with a merge function. Events outside records go to the
+         * first worker. A partitioned parser cannot also be {@link #pipelined pipelined}.
+         */
+        public Builder partitionBy(String keyPath, int workers) {
+            checkState(!partitionerAdded, "The partitioning cannot be changed after build()");
+            checkArgument(workers > 0, "There must be at least one worker");
+            this.partitionKeyPath = checkNotNull(keyPath);
+            this.partitionWorkers = workers;
+            return this;
+        }
+
+        /**
+         * Registers a converter for the values of {@link ElementEnd} methods that take the given
+         * type. It applies to the handlers added after it.
+         */
+        public <T> Builder converter(Class<T> type, ValueConverter<? extends T> converter) {
+            checkState(!partitionerAdded, "Converters cannot be added after build()");
+            plan.registerConverter(type, converter);
+            return this;
+        }
+
+        /**
+         * Adds a handler class. The factory is called once per parse, to create the handler object
+         * used by that parse.
+         */
+        public <T> Builder handler(Class<T> type, Supplier<? extends T> factory) {
+            checkState(!partitionerAdded, "Handlers cannot be added after build()");
+            checkNotNull(factory);
+            plan.addHandler(type);
+            factories.add(factory);
+            merges.add(null);
+            groups.add(null);
+            return this;
+        }
+
+        /**
+         * Adds a handler class in a named group. Every group runs its handlers on a thread of its
+         * own, so groups consume the events of one parse concurrently, each at its own pace. See
+         * {@link ParseSession#groupLag(String)}.
+         */
+        public <T> Builder handler(Class<T> type, Supplier<? extends T> factory, String group) {
+            checkNotEmpty(group);
+            handler(type, factory);
+            groups.set(groups.size() - 1, group);
+            return this;
+        }
+
+        /**
+         * Adds a handler class whose objects can be merged. When a file is
+         * {@link CompiledParser#parseFileInParallel parsed in parallel}, every chunk gets its own
+         * handler object, and the objects of consecutive chunks are merged with the given
+         * function.
+         */
+        @SuppressWarnings("unchecked")
+        public <T> Builder handler(Class<T> type, Supplier<? extends T> factory,
+                BinaryOperator<T> merge) {
+            checkNotNull(merge);
+            handler(type, factory);
+            merges.set(merges.size() - 1, (BinaryOperator<Object>) merge);
+            return this;
+        }
+
+        public CompiledParser build() {
+            boolean grouped = groups.stream().anyMatch(g -> g != null);
+            checkState(!grouped || (!pipelined && partitionKeyPath == null),
+                    "Handler groups cannot be combined with pipelining or partitioning");
+            checkState(partitionKeyPath == null || !pipelined,
+                    "Partitioning cannot be combined with pipelining");
+            if (partitionKeyPath != null && !partitionerAdded) {
+                checkState(!merges.contains(null),
+                        "All handlers must have a merge function when partitioning by key");
+                plan.addFramingHandler(Partitioner.class,
+                        Partitioner.dispatcher(partitionKeyPath));
+                partitionerAdded = true;
+            }
+            return new CompiledParser(this);
+        }
+    }
+
+}
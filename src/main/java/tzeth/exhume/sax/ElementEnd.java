@@ -9,4 +9,12 @@ import java.lang.annotation.Target;
 @Target(ElementType.METHOD)
 public @interface ElementEnd {
     public String value();
+
+    /**
+     * The number of values passed per call to a method that takes a batch of values: a
+     * {@code List} of one of the supported value types, or an {@code int[]}, {@code long[]} or
+     * {@code double[]}. The last batch, which may be smaller, is passed at the end of the document.
+     * Ignored for methods that take a single value.
+     */
+    public int batchSize() default 1000;
 }
@@ -0,0 +1,161 @@
+package tzeth.exhume.sax;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns element names into dense int ids.
+ * <p>
+ * A table is seeded with the names used by the compiled path expressions, so that those names get
+ * the lowest ids, and grows with every other name seen while parsing. Tables are not thread-safe;
+ * every parse works on its own {@link #copy() copy} of the seeded table.
+ * <p>
+ * Names can be looked up both as strings and as UTF-8 encoded bytes; a name seen as bytes is only
+ * decoded the first time it is interned.
+ */
+final class ElementNames {
+    private String[] names;
+    private byte[][] encodedNames;
+    private int size;
+    private int[] stringSlots;
+    private int[] byteSlots;
+
+    public ElementNames() {
+        this.names = new String[16];
+        this.encodedNames = new byte[16][];
+        this.stringSlots = new int[32];
+        this.byteSlots = new int[32];
+    }
+
+    private ElementNames(ElementNames source) {
+        this.names = source.names.clone();
+        this.encodedNames = source.encodedNames.clone();
+        this.size = source.size;
+        this.stringSlots = source.stringSlots.clone();
+        this.byteSlots = source.byteSlots.clone();
+    }
+
+    public ElementNames copy() {
+        return new ElementNames(this);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String name(int id) {
+        checkArgument(id >= 0 && id < size, "Unknown name id: %s", id);
+        return names[id];
+    }
+
+    public byte[] encodedName(int id) {
+        checkArgument(id >= 0 && id < size, "Unknown name id: %s", id);
+        return encodedNames[id];
+    }
+
+    /**
+     * Returns the id of the given name, or -1 if the name has not been interned.
+     */
+    public int find(String name) {
+        int mask = stringSlots.length - 1;
+        for (int slot = hash(name) & mask;; slot = (slot + 1) & mask) {
+            int id = stringSlots[slot] - 1;
+            if (id < 0 || names[id].equals(name)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Returns the id of the given name, assigning the next free id if it has not been seen before.
+     */
+    public int intern(String name) {
+        int id = find(name);
+        return id >= 0 ? id : add(name, name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the id of the name encoded as UTF-8 in the given range of the buffer, assigning the
+     * next free id if it has not been seen before.
+     */
+    public int intern(ByteBuffer buffer, int start, int end) {
+        int mask = byteSlots.length - 1;
+        for (int slot = hash(buffer, start, end) & mask;; slot = (slot + 1) & mask) {
+            int id = byteSlots[slot] - 1;
+            if (id < 0) {
+                byte[] encoded = new byte[end - start];
+                for (int n = start; n < end; ++n) {
+                    encoded[n - start] = buffer.get(n);
+                }
+                return add(new String(encoded, StandardCharsets.UTF_8), encoded);
+            }
+            if (equals(encodedNames[id], buffer, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    private int add(String name, byte[] encoded) {
+        int id = size++;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, 2 * id);
+            encodedNames = Arrays.copyOf(encodedNames, 2 * id);
+        }
+        names[id] = name;
+        encodedNames[id] = encoded;
+        if (2 * size > stringSlots.length) {
+            stringSlots = new int[2 * stringSlots.length];
+            byteSlots = new int[stringSlots.length];
+            for (int n = 0; n < size; ++n) {
+                insert(n);
+            }
+        } else {
+            insert(id);
+        }
+        return id;
+    }
+
+    private void insert(int id) {
+        int mask = stringSlots.length - 1;
+        int slot = hash(names[id]) & mask;
+        while (stringSlots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        stringSlots[slot] = id + 1;
+        byte[] encoded = encodedNames[id];
+        slot = hash(ByteBuffer.wrap(encoded), 0, encoded.length) & mask;
+        while (byteSlots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        byteSlots[slot] = id + 1;
+    }
+
+    private static boolean equals(byte[] encoded, ByteBuffer buffer, int start, int end) {
+        if (encoded.length != end - start) {
+            return false;
+        }
+        for (int n = 0; n < encoded.length; ++n) {
+            if (encoded[n] != buffer.get(start + n)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(String name) {
+        int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash(ByteBuffer buffer, int start, int end) {
+        int h = 0;
+        for (int n = start; n < end; ++n) {
+            h = 31 * h + buffer.get(n);
+        }
+        return h ^ (h >>> 16);
+    }
+
+}
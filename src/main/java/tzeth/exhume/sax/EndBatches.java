@@ -0,0 +1,211 @@
+package tzeth.exhume.sax;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+/**
+ * The batches of values being collected for the batched {@link ElementEnd} methods of one set of
+ * handler objects.
+ * <p>
+ * Every batch handed to a method is a new list or array, which the method may keep.
+ */
+final class EndBatches {
+    private Batch[] batches = new Batch[0];
+
+    /**
+     * Adds a value to the batch of the binding, and invokes the method if the batch is full.
+     */
+    public void add(EndBinding binding, Object handler, Object value) {
+        Batch batch = batch(binding);
+        batch.add(value);
+        flushIfFull(binding, handler, batch);
+    }
+
+    /**
+     * Like {@link #add(EndBinding, Object, Object)}, with the value converted from the element.
+     * Primitive values are not boxed on the way.
+     */
+    public void addValueOf(EndBinding binding, Object handler, EndOfElement eoe) {
+        Batch batch = batch(binding);
+        batch.addValueOf(eoe);
+        flushIfFull(binding, handler, batch);
+    }
+
+    private static void flushIfFull(EndBinding binding, Object handler, Batch batch) {
+        if (batch.size() >= binding.batchSize()) {
+            binding.invokeWithValue(handler, batch.drain());
+        }
+    }
+
+    /**
+     * Invokes the methods of all batches that are not empty, at the end of the document.
+     */
+    public void flush(Object[] handlers) {
+        for (Batch batch : batches) {
+            if (batch != null && batch.size() > 0) {
+                batch.binding.invokeWithValue(handlers[batch.binding.slot()], batch.drain());
+            }
+        }
+    }
+
+    private Batch batch(EndBinding binding) {
+        int index = binding.batchIndex();
+        if (index >= batches.length) {
+            batches = Arrays.copyOf(batches, Math.max(index + 1, 2 * batches.length));
+        }
+        Batch batch = batches[index];
+        if (batch == null) {
+            batch = newBatch(binding);
+            batches[index] = batch;
+        }
+        return batch;
+    }
+
+    private static Batch newBatch(EndBinding binding) {
+        Class<?> type = binding.batchType();
+        if (type == int[].class) {
+            return new IntBatch(binding);
+        } else if (type == long[].class) {
+            return new LongBatch(binding);
+        } else if (type == double[].class) {
+            return new DoubleBatch(binding);
+        } else {
+            return new ListBatch(binding);
+        }
+    }
+
+    private abstract static class Batch {
+        final EndBinding binding;
+        int size;
+
+        Batch(EndBinding binding) {
+            this.binding = binding;
+        }
+
+        final int size() {
+            return size;
+        }
+
+        abstract void add(Object value);
+
+        void addValueOf(EndOfElement eoe) {
+            add(binding.value(eoe));
+        }
+
+        /**
+         * Returns the collected values, and starts a new batch.
+         */
+        abstract Object drain();
+    }
+
+    private static final class ListBatch extends Batch {
+        @Nullable
+        private List<Object> values;
+
+        ListBatch(EndBinding binding) {
+            super(binding);
+        }
+
+        @Override
+        void add(Object value) {
+            if (values == null) {
+                values = new ArrayList<>(binding.batchSize());
+            }
+            values.add(value);
+            ++size;
+        }
+
+        @Override
+        Object drain() {
+            List<Object> result = values;
+            values = null;
+            size = 0;
+            return result;
+        }
+    }
+
+    private static final class IntBatch extends Batch {
+        private int[] values;
+
+        IntBatch(EndBinding binding) {
+            super(binding);
+            this.values = new int[binding.batchSize()];
+        }
+
+        @Override
+        void add(Object value) {
+            values[size++] = (Integer) value;
+        }
+
+        @Override
+        void addValueOf(EndOfElement eoe) {
+            values[size++] = eoe.intValue();
+        }
+
+        @Override
+        Object drain() {
+            int[] result = size == values.length ? values : Arrays.copyOf(values, size);
+            values = new int[values.length];
+            size = 0;
+            return result;
+        }
+    }
+
+    private static final class LongBatch extends Batch {
+        private long[] values;
+
+        LongBatch(EndBinding binding) {
+            super(binding);
+            this.values = new long[binding.batchSize()];
+        }
+
+        @Override
+        void add(Object value) {
+            values[size++] = (Long) value;
+        }
+
+        @Override
+        void addValueOf(EndOfElement eoe) {
+            values[size++] = eoe.longValue();
+        }
+
+        @Override
+        Object drain() {
+            long[] result = size == values.length ? values : Arrays.copyOf(values, size);
+            values = new long[values.length];
+            size = 0;
+            return result;
+        }
+    }
+
+    private static final class DoubleBatch extends Batch {
+        private double[] values;
+
+        DoubleBatch(EndBinding binding) {
+            super(binding);
+            this.values = new double[binding.batchSize()];
+        }
+
+        @Override
+        void add(Object value) {
+            values[size++] = (Double) value;
+        }
+
+        @Override
+        void addValueOf(EndOfElement eoe) {
+            values[size++] = eoe.doubleValue();
+        }
+
+        @Override
+        Object drain() {
+            double[] result = size == values.length ? values : Arrays.copyOf(values, size);
+            values = new double[values.length];
+            size = 0;
+            return result;
+        }
+    }
+
+}
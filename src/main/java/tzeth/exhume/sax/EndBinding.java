@@ -0,0 +1,207 @@
+package tzeth.exhume.sax;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import tzeth.exhume.ExhumeException;
+import tzeth.exhume.sax.ValueConverters.ValueFactory;
+
+/**
+ * An {@link ElementEnd} method bound to the handler in a given slot of a parse session, together
+ * with the conversion of the element value to the type the method takes.
+ * <p>
+ * A method that takes a primitive is invoked with the value converted straight from the element,
+ * without boxing. For deferred invocations, the value is carried as the bits of a {@code long};
+ * see {@link #primitiveValue(EndOfElement)}. A method that takes a batch of values is not
+ * invoked per element; its values are collected in {@link EndBatches} and the method is invoked
+ * once the batch is full.
+ */
+final class EndBinding {
+    private final int slot;
+    private final EndInvoker invoker;
+    @Nullable
+    private final PrimitiveValue primitiveValue;
+    @Nullable
+    private final PrimitiveInvoker primitiveInvoker;
+    private final ValueFactory valueFactory;
+    @Nullable
+    private final Class<?> batchType;
+    private final int batchSize;
+    private final int batchIndex;
+
+    public EndBinding(int slot, ValueFactory valueFactory, EndInvoker invoker) {
+        this(slot, valueFactory, invoker, null, null, null, 0, -1);
+    }
+
+    private EndBinding(int slot, ValueFactory valueFactory, EndInvoker invoker,
+            @Nullable PrimitiveValue primitiveValue, @Nullable PrimitiveInvoker primitiveInvoker,
+            @Nullable Class<?> batchType, int batchSize, int batchIndex) {
+        this.slot = slot;
+        this.valueFactory = valueFactory;
+        this.invoker = invoker;
+        this.primitiveValue = primitiveValue;
+        this.primitiveInvoker = primitiveInvoker;
+        this.batchType = batchType;
+        this.batchSize = batchSize;
+        this.batchIndex = batchIndex;
+    }
+
+    /**
+     * Returns a binding for a method that takes a batch of values.
+     *
+     * @param batchIndex identifies the batch among all batched bindings of a plan
+     */
+    public static EndBinding batched(int slot, Class<?> batchType, Class<?> valueType,
+            ValueFactory valueFactory, int batchSize, int batchIndex, EndInvoker invoker) {
+        checkArgument(batchSize > 0, "The batch size must be positive");
+        if (batchType.equals(List.class)) {
+            checkArgument(!valueType.isPrimitive() && !valueType.equals(EndOfElement.class),
+                    "A batch list must hold one of the value types, but not EndOfElement: %s",
+                    valueType.getName());
+        } else {
+            checkArgument(batchType.isArray() && batchType.getComponentType().equals(valueType)
+                    && (valueType == int.class || valueType == long.class
+                            || valueType == double.class),
+                    "A batch must be a List, int[], long[] or double[]: %s", batchType.getName());
+        }
+        return new EndBinding(slot, valueFactory, invoker, null, null, batchType, batchSize,
+                batchIndex);
+    }
+
+    public static EndBinding ofInt(int slot, EndInvoker.OfInt invoker) {
+        return new EndBinding(slot, EndOfElement::intValue,
+                (h, v) -> invoker.invoke(h, (Integer) v),
+                EndOfElement::intValue, (h, v) -> invoker.invoke(h, (int) v), null, 0, -1);
+    }
+
+    public static EndBinding ofLong(int slot, EndInvoker.OfLong invoker) {
+        return new EndBinding(slot, EndOfElement::longValue,
+                (h, v) -> invoker.invoke(h, (Long) v),
+                EndOfElement::longValue, invoker::invoke, null, 0, -1);
+    }
+
+    public static EndBinding ofDouble(int slot, EndInvoker.OfDouble invoker) {
+        return new EndBinding(slot, EndOfElement::doubleValue,
+                (h, v) -> invoker.invoke(h, (Double) v),
+                eoe -> Double.doubleToRawLongBits(eoe.doubleValue()),
+                (h, v) -> invoker.invoke(h, Double.longBitsToDouble(v)), null, 0, -1);
+    }
+
+    public static EndBinding ofFloat(int slot, EndInvoker.OfFloat invoker) {
+        return new EndBinding(slot, EndOfElement::floatValue,
+                (h, v) -> invoker.invoke(h, (Float) v),
+                eoe -> Float.floatToRawIntBits(eoe.floatValue()),
+                (h, v) -> invoker.invoke(h, Float.intBitsToFloat((int) v)), null, 0, -1);
+    }
+
+    public static EndBinding ofBoolean(int slot, EndInvoker.OfBoolean invoker) {
+        return new EndBinding(slot, EndOfElement::booleanValue,
+                (h, v) -> invoker.invoke(h, (Boolean) v),
+                eoe -> eoe.booleanValue() ? 1 : 0, (h, v) -> invoker.invoke(h, v != 0), null, 0,
+                -1);
+    }
+
+    public int slot() {
+        return slot;
+    }
+
+    /**
+     * Whether the method takes a primitive, which can be passed as a {@code long} with
+     * {@link #primitiveValue(EndOfElement)} and {@link #invokeWithPrimitive(Object, long)}.
+     */
+    public boolean isPrimitive() {
+        return primitiveValue != null;
+    }
+
+    public boolean isBatched() {
+        return batchIndex >= 0;
+    }
+
+    public int batchIndex() {
+        return batchIndex;
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    @Nullable
+    public Class<?> batchType() {
+        return batchType;
+    }
+
+    public void invoke(Object handler, EndOfElement eoe) {
+        if (primitiveValue == null) {
+            invokeWithValue(handler, value(eoe));
+        } else {
+            invokeWithPrimitive(handler, primitiveValue.of(eoe));
+        }
+    }
+
+    /**
+     * Converts the element value to the type the method takes, or to the element type of the
+     * batch.
+     */
+    public Object value(EndOfElement eoe) {
+        return valueFactory.of(eoe);
+    }
+
+    /**
+     * Converts the element value of a {@link #isPrimitive() primitive} method to the bits of a
+     * {@code long}: integers are widened, floating point values are stored as their raw bits, and
+     * booleans as 1 or 0.
+     */
+    public long primitiveValue(EndOfElement eoe) {
+        return primitiveValue.of(eoe);
+    }
+
+    /**
+     * Invokes a {@link #isPrimitive() primitive} method with a value from
+     * {@link #primitiveValue(EndOfElement)}.
+     */
+    public void invokeWithPrimitive(Object handler, long value) {
+        try {
+            primitiveInvoker.invoke(handler, value);
+        } catch (ExhumeException | StopParsing e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ExhumeException(e);
+        }
+    }
+
+    /**
+     * Invokes the method with the converted value, or adds the value to the batch of the method
+     * in {@code batches}, invoking the method if the batch is full.
+     */
+    public void invokeWithValue(Object handler, Object value, EndBatches batches) {
+        if (batchIndex < 0) {
+            invokeWithValue(handler, value);
+        } else {
+            batches.add(this, handler, value);
+        }
+    }
+
+    public void invokeWithValue(Object handler, Object value) {
+        try {
+            invoker.invoke(handler, value);
+        } catch (ExhumeException | StopParsing e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ExhumeException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private static interface PrimitiveValue {
+        public long of(EndOfElement eoe);
+    }
+
+    @FunctionalInterface
+    private static interface PrimitiveInvoker {
+        public void invoke(Object handler, long value);
+    }
+
+}
@@ -0,0 +1,45 @@
+package tzeth.exhume.sax;
+
+/**
+ * Calls an {@link ElementEnd} handler method on a handler object.
+ * <p>
+ * Methods that take a primitive are called through one of the nested specializations instead, so
+ * that the value is not boxed.
+ */
+@FunctionalInterface
+public interface EndInvoker {
+    public void invoke(Object handler, Object value);
+
+    /**
+     * Calls a method that returns a {@link ParseAction}. Primitive values are passed boxed.
+     */
+    @FunctionalInterface
+    public static interface Controlling {
+        public ParseAction invoke(Object handler, Object value);
+    }
+
+    @FunctionalInterface
+    public static interface OfInt {
+        public void invoke(Object handler, int value);
+    }
+
+    @FunctionalInterface
+    public static interface OfLong {
+        public void invoke(Object handler, long value);
+    }
+
+    @FunctionalInterface
+    public static interface OfDouble {
+        public void invoke(Object handler, double value);
+    }
+
+    @FunctionalInterface
+    public static interface OfFloat {
+        public void invoke(Object handler, float value);
+    }
+
+    @FunctionalInterface
+    public static interface OfBoolean {
+        public void invoke(Object handler, boolean value);
+    }
+}
@@ -1,21 +1,41 @@
 package tzeth.exhume.sax;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import static tzeth.preconds.MorePreconditions.checkNotEmpty;
 
 import java.math.BigDecimal;
+import java.time.DateTimeException;
 import java.time.LocalDate;
-import java.time.format.DateTimeParseException;
 
 import javax.annotation.Nullable;
 
 import tzeth.exhume.ExhumeException;
 
+/**
+ * The end of an element, with its text value.
+ * <p>
+ * The objects a parse session passes to handlers read the value straight from the text buffer of
+ * the session: the conversions parse the characters in place, and a String is only created if
+ * the value is asked for as one. Such an object must not be kept after the handler returns,
+ * except when the handler method takes an {@code EndOfElement}, whose value is then kept.
+ */
 public final class EndOfElement {
     private final String uri;
     private final String localName;
     private final String qName;
-    private final String value;
+    @Nullable
+    private String value;
+    @Nullable
+    private final char[] chars;
+    private final int start;
+    private final int length;
+    @Nullable
+    private final ValueCache cache;
+    @Nullable
+    private final PathTracker pathTracker;
+    @Nullable
+    private final Path resolvedPath;
 
     public EndOfElement(@Nullable String uri, @Nullable String localName, String qName,
             @Nullable String value) {
@@ -23,6 +43,57 @@ public final class EndOfElement {
         this.localName = localName;
         this.qName = checkNotEmpty(qName);
         this.value = checkNotNull(value);
+        this.chars = null;
+        this.start = 0;
+        this.length = 0;
+        this.cache = null;
+        this.pathTracker = null;
+        this.resolvedPath = null;
+    }
+
+    /**
+     * Creates the end of an element whose text is the given range of the text buffer, which must
+     * not change while the object is in use.
+     */
+    EndOfElement(@Nullable String uri, @Nullable String localName, String qName, char[] chars,
+            int start, int length, ValueCache cache, PathTracker pathTracker) {
+        this.uri = uri;
+        this.localName = localName;
+        this.qName = checkNotEmpty(qName);
+        this.chars = chars;
+        this.start = start;
+        this.length = length;
+        this.cache = cache;
+        this.pathTracker = pathTracker;
+        this.resolvedPath = null;
+    }
+
+    private EndOfElement(EndOfElement eoe) {
+        this.uri = eoe.uri;
+        this.localName = eoe.localName;
+        this.qName = eoe.qName;
+        this.value = eoe.value();
+        this.chars = null;
+        this.start = 0;
+        this.length = 0;
+        this.cache = null;
+        this.pathTracker = null;
+        this.resolvedPath = eoe.pathTracker != null ? eoe.pathTracker.toPath() : eoe.resolvedPath;
+    }
+
+    /**
+     * Returns a copy that stays valid after the parser has moved on, with the path resolved.
+     */
+    EndOfElement detach() {
+        return new EndOfElement(this);
+    }
+
+    /**
+     * Makes the value stay valid after the parser has moved on, and returns this object.
+     */
+    EndOfElement keepValue() {
+        value();
+        return this;
     }
 
     @Nullable
@@ -39,70 +110,151 @@ public final class EndOfElement {
         return qName;
     }
 
+    /**
+     * Returns the absolute path of the element. The path is only available while the handler that
+     * received this object is running.
+     */
+    public String path() {
+        if (resolvedPath != null) {
+            return resolvedPath.toString();
+        }
+        checkState(pathTracker != null, "The path of the element is not known");
+        return pathTracker.toPath().toString();
+    }
+
     @Nullable
     public String value() {
+        if (value == null && chars != null) {
+            value = cache.string(chars, start, length);
+        }
         return value;
     }
 
     @Nullable
     public Integer valueAsInteger() {
-        if (value == null) {
+        return hasValue() ? intValue() : null;
+    }
+
+    @Nullable
+    public Long valueAsLong() {
+        return hasValue() ? longValue() : null;
+    }
+
+    @Nullable
+    public Double valueAsDouble() {
+        return hasValue() ? doubleValue() : null;
+    }
+
+    @Nullable
+    public BigDecimal valueAsBigDecimal() {
+        if (!hasValue()) {
             return null;
         }
         try {
-            return Integer.valueOf(value);
-        } catch (NumberFormatException e) {
+            return chars != null
+                    ? CharParsers.parseBigDecimal(chars, start, length)
+                    : new BigDecimal(value);
+        } catch (Exception e) {
             throw new ExhumeException(e);
         }
     }
 
     @Nullable
-    public Double valueAsDouble() {
-        if (value == null) {
+    public LocalDate valueAsLocalDate() {
+        if (!hasValue()) {
             return null;
         }
         try {
-            return Double.valueOf(value);
-        } catch (NumberFormatException e) {
+            return chars != null
+                    ? cache.localDate(chars, start, length)
+                    : LocalDate.parse(value);
+        } catch (DateTimeException e) {
             throw new ExhumeException(e);
         }
     }
 
     @Nullable
-    public BigDecimal valueAsBigDecimal() {
-        if (value == null) {
-            return null;
+    public Boolean valueAsBoolean() {
+        return hasValue() ? booleanValue() : null;
+    }
+
+    public int intValue() {
+        try {
+            return chars != null
+                    ? CharParsers.parseInt(chars, start, length)
+                    : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ExhumeException(e);
         }
+    }
+
+    public long longValue() {
         try {
-            return new BigDecimal(value);
-        } catch (Exception e) {
+            return chars != null
+                    ? CharParsers.parseLong(chars, start, length)
+                    : Long.parseLong(value);
+        } catch (NumberFormatException e) {
             throw new ExhumeException(e);
         }
     }
 
-    @Nullable
-    public LocalDate valueAsLocalDate() {
-        if (value == null) {
-            return null;
+    public double doubleValue() {
+        try {
+            return chars != null
+                    ? CharParsers.parseDouble(chars, start, length)
+                    : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new ExhumeException(e);
         }
+    }
+
+    public float floatValue() {
         try {
-            return LocalDate.parse(value);
-        } catch (DateTimeParseException e) {
+            return chars != null
+                    ? CharParsers.parseFloat(chars, start, length)
+                    : Float.parseFloat(value);
+        } catch (NumberFormatException e) {
             throw new ExhumeException(e);
         }
     }
 
-    @Nullable
-    public Boolean valueAsBoolean() {
-        if (value == null) {
-            return null;
+    public boolean booleanValue() {
+        if (chars != null) {
+            try {
+                return CharParsers.parseBoolean(chars, start, length);
+            } catch (IllegalArgumentException e) {
+                throw new ExhumeException(e.getMessage());
+            }
         }
         if (value.equals("1") || value.equals("true")) {
-            return Boolean.TRUE;
+            return true;
         } else if (value.equals("0") || value.equals("false")) {
-            return Boolean.FALSE;
+            return false;
         }
         throw new ExhumeException("Not a valid boolean: " + value);
     }
 
+    /**
+     * Converts the value with the given converter.
+     */
+    @Nullable
+    public <T> T valueAs(ValueConverter<T> converter) {
+        if (!hasValue()) {
+            return null;
+        }
+        try {
+            return chars != null
+                    ? converter.convert(chars, start, length)
+                    : converter.convert(value.toCharArray(), 0, value.length());
+        } catch (ExhumeException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new ExhumeException(e);
+        }
+    }
+
+    private boolean hasValue() {
+        return value != null || chars != null;
+    }
+
 }
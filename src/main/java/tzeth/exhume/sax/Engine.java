@@ -0,0 +1,25 @@
+package tzeth.exhume.sax;
+
+/**
+ * The XML parser that drives the dispatch to the handlers. The handlers see the same events
+ * whichever engine is used.
+ */
+public enum Engine {
+    /**
+     * The JDK SAX parser, through {@link SaxParsers}.
+     */
+    SAX,
+
+    /**
+     * A StAX {@link javax.xml.stream.XMLStreamReader} pull loop. Attributes are only read, and
+     * text only copied, for elements that a handler is registered for.
+     */
+    STAX,
+
+    /**
+     * A built-in tokenizer that works on the UTF-8 bytes of the document. Element names are
+     * matched as bytes, and only the text and attribute values that handlers receive are decoded.
+     * Supports UTF-8 documents without a DTD.
+     */
+    NATIVE;
+}
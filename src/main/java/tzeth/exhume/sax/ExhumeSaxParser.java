@@ -1,34 +1,44 @@
 package tzeth.exhume.sax;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static tzeth.preconds.MorePreconditions.checkNotEmpty;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.math.BigDecimal;
-import java.time.LocalDate;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
-import java.util.Stack;
-import java.util.stream.Collectors;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.annotation.Nullable;
 
-import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
-
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
-
-import tzeth.exhume.ExhumeException;
 
 public final class ExhumeSaxParser {
-    private final RegisteredHandlers<StartElementHandler> startElementHandlers = new RegisteredHandlers<>();
-    private final RegisteredHandlers<EndElementHandler> endElementHandlers = new RegisteredHandlers<>();
+    private final ParsePlan.Builder planBuilder = new ParsePlan.Builder();
+    private final List<Object> handlers = new ArrayList<>();
+    private final List<String> groups = new ArrayList<>();
+    private Engine engine = Engine.SAX;
+    private boolean pipelined;
+    @Nullable
+    private Duration timeLimit;
+    @Nullable
+    private ParsePlan plan;
+    @Nullable
+    private volatile ParseSession currentSession;
+    /** Set by {@link #cancel()}, and handed to the next parse if none is running. */
+    private volatile boolean cancelled;
 
     public ExhumeSaxParser(Object... handlers) {
         for (Object o : handlers) {
@@ -36,211 +46,250 @@ public final class ExhumeSaxParser {
         }
     }
 
+    /**
+     * Registers a converter for the values of {@link ElementEnd} methods that take the given
+     * type. The conversions of a handler are resolved when it is registered, so the converter
+     * applies to the handlers registered after it.
+     */
+    public <T> void registerConverter(Class<T> type, ValueConverter<? extends T> converter) {
+        planBuilder.registerConverter(type, converter);
+    }
+
     public void registerHandler(Object handler) {
-        String rootPath = "";
-        if (handler.getClass().isAnnotationPresent(RootPath.class)) {
-            rootPath = handler.getClass().getAnnotation(RootPath.class).value();
-        }
-        for (Method m : handler.getClass().getDeclaredMethods()) {
-            if (m.isAnnotationPresent(ElementStart.class)) {
-                String leafPath = m.getAnnotation(ElementStart.class).value();
-                PathExpression pathExpression = PathExpression.of(rootPath, leafPath);
-                StartElementHandler seh = new StartElementHandler(handler, m);
-                startElementHandlers.add(pathExpression, seh);
-            } else if (m.isAnnotationPresent(ElementEnd.class)) {
-                String leafPath = m.getAnnotation(ElementEnd.class).value();
-                PathExpression pathExpression = PathExpression.of(rootPath, leafPath);
-                EndElementHandler eeh = new EndElementHandler(handler, m);
-                endElementHandlers.add(pathExpression, eeh);
-            }
-        }
+        planBuilder.addHandler(handler.getClass());
+        handlers.add(handler);
+        groups.add(null);
+        plan = null;
     }
 
-    public void parseXml(String xml) throws SAXException {
-        SaxParsers.parseXml(xml, new HandlerImpl());
+    /**
+     * Registers a consumer of records: for every record at the {@link RecordPath} of the given
+     * class, a new object of the class is created with its no-argument constructor, its
+     * {@link Bind} fields are filled as the record is parsed, and it is handed to the consumer
+     * when the record ends. For example:
+     *
+     * <pre>
+     * &#64;RecordPath("/Inventory/Books/Book")
+     * class Book {
+     *     &#64;Bind("&#64;id") String id;
+     *     &#64;Bind("Title") String title;
+     *     &#64;Bind("Price") BigDecimal price;
+     * }
+     *
+     * parser.registerRecordConsumer(Book.class, books::add);
+     * </pre>
+     */
+    public <T> void registerRecordConsumer(Class<T> type, Consumer<? super T> consumer) {
+        RecordBinder<T> binder = new RecordBinder<>(type, consumer, planBuilder.converters());
+        planBuilder.addHandler(RecordBinder.class, binder.dispatcher());
+        handlers.add(binder);
+        groups.add(null);
+        plan = null;
     }
 
-    public void parseFile(File file) throws SAXException, IOException {
-        SaxParsers.parseFile(file, new HandlerImpl());
+    /**
+     * Registers a handler in a named group. Every group runs its handlers on a thread of its own,
+     * so groups consume the events of one parse concurrently, each at its own pace. A group that
+     * falls too far behind holds up the parse; see {@link #groupLag(String)}.
+     */
+    public void registerHandler(Object handler, String group) {
+        checkNotEmpty(group);
+        registerHandler(handler);
+        groups.set(groups.size() - 1, group);
     }
 
-    public void parseStream(InputStream stream) throws SAXException, IOException {
-        SaxParsers.parseStream(stream, new HandlerImpl());
+    /**
+     * Returns the number of events that the given handler group has yet to handle in the parse
+     * that is running. Can be called from any thread.
+     */
+    public long groupLag(String group) {
+        ParseSession session = currentSession;
+        if (session == null) {
+            return 0;
+        }
+        return session.groupLag(group);
     }
 
-    private class HandlerImpl extends DefaultHandler {
-        private final Stack<String> pathStack = new Stack<>();
-        private final Stack<StringBuilder> values = new Stack<>();
+    public void setEngine(Engine engine) {
+        this.engine = checkNotNull(engine);
+    }
 
-        @Override
-        public void startElement(String uri, String localName, String qName, Attributes attributes)
-                throws SAXException {
-            pathStack.push(qName);
-            values.push(new StringBuilder());
-            invokeStartElementHandlers(uri, localName, qName, attributes);
-        }
+    /**
+     * Runs the handlers on a dispatch thread of their own, while the document is parsed on the
+     * calling thread.
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
 
-        private void invokeStartElementHandlers(String uri, String localName, String qName,
-                Attributes attributes) {
-            if (startElementHandlers.isEmpty()) {
-                return;
-            }
-            Path path = currentPath();
-            Collection<StartElementHandler> handlers = startElementHandlers.get(path);
-            if (handlers.isEmpty()) {
-                return;
-            }
-            StartOfElement soe = new StartOfElement(uri, localName, qName, attributes);
-            handlers.forEach(seh -> seh.invoke(soe));
-        }
+    /**
+     * Ends every parse that takes longer than the given time, with the outcome
+     * {@link ParseOutcome#TIMED_OUT}. Null removes the limit.
+     */
+    public void setTimeLimit(@Nullable Duration timeLimit) {
+        checkArgument(timeLimit == null || (!timeLimit.isNegative() && !timeLimit.isZero()),
+                "The time limit must be positive");
+        this.timeLimit = timeLimit;
+    }
 
-        private Path currentPath() {
-            String s = pathStack.stream()
-                    .collect(Collectors.joining(Path.SEPARATOR, Path.SEPARATOR, ""));
-            return Path.of(s);
+    /**
+     * Ends the parse that is running as soon as possible, with the outcome
+     * {@link ParseOutcome#CANCELLED}. If no parse is running, the next parse to start is
+     * cancelled instead. Does not affect {@link #newFeeder() feeders}. Can be called from any
+     * thread.
+     */
+    public void cancel() {
+        cancelled = true;
+        ParseSession session = currentSession;
+        if (session != null) {
+            session.cancel();
         }
+    }
 
-        @Override
-        public void endElement(String uri, String localName, String qName) throws SAXException {
-            // TODO: Distinguish between null and empty values. Must look at the "xsi:nil"
-            // attribute
-            // in the start element.
-            StringBuilder value = values.pop();
-            invokeEndElementHandlers(uri, localName, qName, value.toString());
-            pathStack.pop();
+    private ParseSession newSession() {
+        if (plan == null) {
+            plan = planBuilder.build();
         }
-
-        private void invokeEndElementHandlers(String uri, String localName, String qName,
-                @Nullable String value) {
-            if (endElementHandlers.isEmpty()) {
-                return;
-            }
-            Path path = currentPath();
-            Collection<EndElementHandler> handlers = endElementHandlers.get(path);
-            if (handlers.isEmpty()) {
-                return;
-            }
-            EndOfElement eoe = new EndOfElement(uri, localName, qName, value.toString());
-            handlers.forEach(eeh -> eeh.invoke(eoe));
+        ParseSession session = new ParseSession(plan, handlers.toArray(), engine);
+        if (timeLimit != null) {
+            session.timeLimit(timeLimit);
         }
-
-        @Override
-        public void characters(char[] ch, int start, int length) throws SAXException {
-            if (!values.isEmpty()) {
-                StringBuilder value = values.peek();
-                value.append(ch, start, length);
-            }
+        if (groups.stream().anyMatch(g -> g != null)) {
+            checkState(!pipelined, "Handler groups cannot be combined with pipelining");
+            session.grouped(groups);
+        } else if (pipelined) {
+            session.pipelined();
         }
+        return session;
     }
 
-    private static class StartElementHandler {
-        private final Object object;
-        private final Method method;
-
-        public StartElementHandler(Object object, Method method) {
-            this.object = object;
-            this.method = method;
-            Class<?>[] parameterTypes = method.getParameterTypes();
-            checkArgument(
-                    parameterTypes.length == 1 && parameterTypes[0].equals(StartOfElement.class),
-                    "An ElementStart handler must take exactly one parameter of type StartOfElement as input");
-        }
-
-        public void invoke(StartOfElement soe) {
-            try {
-                method.setAccessible(true);
-                method.invoke(object, soe);
-            } catch (IllegalAccessException e) {
-                throw new ExhumeException(e);
-            } catch (IllegalArgumentException e) {
-                throw new ExhumeException(e);
-            } catch (InvocationTargetException e) {
-                throw new ExhumeException(e.getCause());
-            }
+    private ParseSession begin() {
+        ParseSession session = newSession();
+        currentSession = session;
+        // Set after the session is published, so a concurrent cancel() reaches one or the other
+        if (cancelled) {
+            session.cancel();
         }
+        return session;
     }
 
-    private static class EndElementHandler {
-        private final Object object;
-        private final Method method;
-        private final ValueFactory valueFactory;
+    private void end() {
+        currentSession = null;
+        cancelled = false;
+    }
 
-        public EndElementHandler(Object object, Method method) {
-            this.object = object;
-            this.method = method;
-            Class<?>[] parameterTypes = method.getParameterTypes();
-            checkArgument(parameterTypes.length == 1,
-                    "An ElementEnd handler must take exactly one parameter as input");
-            this.valueFactory = getValueFactory(parameterTypes[0]);
+    public ParseOutcome parseXml(String xml) throws SAXException {
+        ParseSession session = begin();
+        try {
+            session.parseXml(xml);
+            return session.outcome();
+        } finally {
+            end();
         }
+    }
 
-        private ValueFactory getValueFactory(Class<?> type) {
-            if (type.equals(EndOfElement.class)) {
-                return eoe -> eoe;
-            } else if (type.equals(String.class)) {
-                return EndOfElement::value;
-            } else if (type.equals(Integer.class)) {
-                return EndOfElement::valueAsInteger;
-            } else if (type.equals(Double.class)) {
-                return EndOfElement::valueAsDouble;
-            } else if (type.equals(BigDecimal.class)) {
-                return EndOfElement::valueAsBigDecimal;
-            } else if (type.equals(Boolean.class)) {
-                return EndOfElement::valueAsBoolean;
-            } else if (type.equals(LocalDate.class)) {
-                return EndOfElement::valueAsLocalDate;
-            } else {
-                throw new IllegalArgumentException(
-                        "An ElementEnd handler must take one of the following types as input: "
-                                + "EndOfElement, String, Integer, Double, BigDecimal, Boolean, LocalDate.");
-            }
+    public ParseOutcome parseFile(File file) throws SAXException, IOException {
+        ParseSession session = begin();
+        try {
+            session.parseFile(file);
+            return session.outcome();
+        } finally {
+            end();
         }
+    }
 
-        public void invoke(EndOfElement eoe) {
-            try {
-                Object value = valueFactory.of(eoe);
-                method.setAccessible(true);
-                method.invoke(object, value);
-            } catch (IllegalAccessException e) {
-                throw new ExhumeException(e);
-            } catch (IllegalArgumentException e) {
-                throw new ExhumeException(e);
-            } catch (InvocationTargetException e) {
-                throw new ExhumeException(e.getCause());
-            }
+    public ParseOutcome parseStream(InputStream stream) throws SAXException, IOException {
+        ParseSession session = begin();
+        try {
+            session.parseStream(stream);
+            return session.outcome();
+        } finally {
+            end();
         }
+    }
 
-        @FunctionalInterface
-        private static interface ValueFactory {
-            public Object of(EndOfElement eoe);
+    /**
+     * Parses a file by memory-mapping it in chunks. Suited for very large files: the page cache
+     * does the I/O, and each chunk is unmapped as soon as it has been parsed.
+     */
+    public ParseOutcome parseMappedFile(File file) throws SAXException, IOException {
+        ParseSession session = begin();
+        try {
+            session.parseMappedFile(file);
+            return session.outcome();
+        } finally {
+            end();
         }
     }
 
-    private static class RegisteredHandlers<T> {
-        private final Multimap<PathExpression, T> all = HashMultimap.create();
-        private final Multimap<Path, T> cachedForPath = HashMultimap.create();
-
-        public void add(PathExpression pathExpression, T handler) {
-            all.put(pathExpression, handler);
+    public ParseOutcome parseBuffer(ByteBuffer buffer) throws SAXException, IOException {
+        ParseSession session = begin();
+        try {
+            session.parseBuffer(buffer);
+            return session.outcome();
+        } finally {
+            end();
         }
+    }
 
-        public boolean isEmpty() {
-            return all.isEmpty();
-        }
+    /**
+     * Returns a feeder for a document that arrives in chunks, such as from a non-blocking
+     * channel; see {@link ParseFeeder}. The document is parsed by the {@link Engine#NATIVE native}
+     * engine, and the handlers run on the threads that feed it, so the parser cannot be pipelined
+     * or have handler groups.
+     * <p>
+     * All the documents of a parser share its handler objects. For documents that are parsed
+     * concurrently, use the feeders of a {@link CompiledParser}, which each have their own.
+     */
+    public ParseFeeder newFeeder() {
+        checkState(!pipelined && groups.stream().allMatch(g -> g == null),
+                "A pipelined parser, or one with handler groups, cannot be fed");
+        return newSession().feeder();
+    }
+
+    /**
+     * Returns a lazy stream of the records at the {@link RecordPath} of the given class; see
+     * {@link #stream(File, String, Class)}.
+     */
+    public <T> Stream<T> stream(File file, Class<T> type) throws IOException {
+        return stream(file, RecordBinder.recordPathOf(type), type);
+    }
 
-        public Collection<T> get(Path path) {
-            if (cachedForPath.containsKey(path)) {
-                return cachedForPath.get(path);
-            }
-            List<T> handlers = new ArrayList<>();
-            for (PathExpression expr : all.keySet()) {
-                if (expr.matches(path)) {
-                    handlers.addAll(all.get(expr));
-                }
-            }
-            cachedForPath.putAll(path, handlers);
-            return handlers;
+    /**
+     * Returns a lazy stream of the records at the given path, bound to objects of the given class
+     * as for {@link #registerRecordConsumer}. The file is parsed on the thread that consumes the
+     * stream, only as far as records are pulled from it, so only a bounded number of records is
+     * held however large the file is. The registered converters apply, the registered handlers do
+     * not, and the {@link Engine#NATIVE native} engine is always used.
+     * <p>
+     * The file is closed when the last record has been consumed, or when the stream is closed:
+     *
+     * <pre>
+     * try (Stream&lt;Book&gt; books = parser.stream(file, "/Inventory/Books/Book", Book.class)) {
+     *     books.filter(Book::isOnSale).limit(10).forEach(sink);
+     * }
+     * </pre>
+     *
+     * A parse error is thrown from the stream as an {@link tzeth.exhume.ExhumeException}.
+     */
+    public <T> Stream<T> stream(File file, String recordPath, Class<T> type) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        RecordStream<T> records;
+        try {
+            records = new RecordStream<>(channel, recordPath, type, planBuilder.converters());
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
         }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(records,
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        records.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
     }
 
 }
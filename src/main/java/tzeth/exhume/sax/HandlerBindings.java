@@ -0,0 +1,33 @@
+package tzeth.exhume.sax;
+
+/**
+ * Receives the handler methods of a {@link HandlerDispatcher}, with the path expressions already
+ * resolved against the {@link RootPath} of the handler class.
+ */
+public interface HandlerBindings {
+    public void onStart(String expression, StartInvoker invoker);
+
+    public void onStartControlling(String expression, StartInvoker.Controlling invoker);
+
+    public void onEnd(String expression, Class<?> valueType, EndInvoker invoker);
+
+    public void onEndControlling(String expression, Class<?> valueType,
+            EndInvoker.Controlling invoker);
+
+    public void onEndInt(String expression, EndInvoker.OfInt invoker);
+
+    public void onEndLong(String expression, EndInvoker.OfLong invoker);
+
+    public void onEndDouble(String expression, EndInvoker.OfDouble invoker);
+
+    public void onEndFloat(String expression, EndInvoker.OfFloat invoker);
+
+    public void onEndBoolean(String expression, EndInvoker.OfBoolean invoker);
+
+    /**
+     * Binds an end method that takes a batch of values: a {@code List} of {@code valueType}, or
+     * an array of the primitive {@code valueType}.
+     */
+    public void onEndBatch(String expression, Class<?> batchType, Class<?> valueType,
+            int batchSize, EndInvoker invoker);
+}
@@ -0,0 +1,18 @@
+package tzeth.exhume.sax;
+
+/**
+ * Describes the {@link ElementStart} and {@link ElementEnd} methods of a handler class.
+ * <p>
+ * Implementations are generated at compile time by
+ * {@link tzeth.exhume.sax.processor.HandlerDispatcherProcessor}, and picked up by
+ * {@link ExhumeSaxParser} in place of looking the methods up with reflection.
+ */
+public interface HandlerDispatcher {
+    /**
+     * Generated dispatchers are named after the handler class, with this suffix, in the package of
+     * the handler class. Nested class names are separated by underscores.
+     */
+    public static final String SUFFIX = "_ExhumeDispatcher";
+
+    public void bind(HandlerBindings bindings);
+}
@@ -0,0 +1,159 @@
+package tzeth.exhume.sax;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+
+import tzeth.exhume.ExhumeException;
+
+/**
+ * Finds the {@link HandlerDispatcher} of a handler class: the generated one if it exists,
+ * otherwise one that looks up the handler methods with reflection. Either is created once per
+ * class.
+ */
+final class HandlerDispatchers {
+    private static final ClassValue<HandlerDispatcher> DISPATCHERS =
+            new ClassValue<HandlerDispatcher>() {
+        @Override
+        protected HandlerDispatcher computeValue(Class<?> type) {
+            HandlerDispatcher generated = generatedDispatcher(type);
+            return generated != null ? generated : new ReflectiveDispatcher(type);
+        }
+    };
+
+    public static HandlerDispatcher of(Class<?> handlerType) {
+        return DISPATCHERS.get(handlerType);
+    }
+
+    static String generatedName(Class<?> handlerType) {
+        String name = handlerType.getName();
+        int packageEnd = name.lastIndexOf('.') + 1;
+        return name.substring(0, packageEnd)
+                + name.substring(packageEnd).replace('$', '_')
+                + HandlerDispatcher.SUFFIX;
+    }
+
+    private static HandlerDispatcher generatedDispatcher(Class<?> handlerType) {
+        Class<?> dispatcherType;
+        try {
+            dispatcherType = Class.forName(generatedName(handlerType), true,
+                    handlerType.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        try {
+            return (HandlerDispatcher) dispatcherType.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new ExhumeException("Invalid generated dispatcher " + dispatcherType.getName(), e);
+        }
+    }
+
+    private static final class ReflectiveDispatcher implements HandlerDispatcher {
+        private final List<Consumer<HandlerBindings>> methods = new ArrayList<>();
+
+        public ReflectiveDispatcher(Class<?> type) {
+            String rootPath = "";
+            if (type.isAnnotationPresent(RootPath.class)) {
+                rootPath = type.getAnnotation(RootPath.class).value();
+            }
+            for (Method m : type.getDeclaredMethods()) {
+                if (m.isAnnotationPresent(ElementStart.class)) {
+                    String leafPath = m.getAnnotation(ElementStart.class).value();
+                    String expression = PathExpression.of(rootPath, leafPath).toString();
+                    Class<?>[] parameterTypes = m.getParameterTypes();
+                    checkArgument(
+                            parameterTypes.length == 1 && parameterTypes[0].equals(StartOfElement.class),
+                            "An ElementStart handler must take exactly one parameter of type StartOfElement as input");
+                    if (m.getReturnType().equals(ParseAction.class)) {
+                        StartInvoker.Controlling invoker = HandlerInvokers
+                                .startControllingInvoker(m);
+                        methods.add(bindings -> bindings.onStartControlling(expression, invoker));
+                    } else {
+                        StartInvoker invoker = HandlerInvokers.startInvoker(m);
+                        methods.add(bindings -> bindings.onStart(expression, invoker));
+                    }
+                } else if (m.isAnnotationPresent(ElementEnd.class)) {
+                    String leafPath = m.getAnnotation(ElementEnd.class).value();
+                    String expression = PathExpression.of(rootPath, leafPath).toString();
+                    Class<?>[] parameterTypes = m.getParameterTypes();
+                    checkArgument(parameterTypes.length == 1,
+                            "An ElementEnd handler must take exactly one parameter as input");
+                    methods.add(endMethod(m, expression, parameterTypes[0]));
+                }
+            }
+        }
+
+        private static Consumer<HandlerBindings> endMethod(Method m, String expression,
+                Class<?> parameterType) {
+            if (m.getReturnType().equals(ParseAction.class)) {
+                checkArgument(batchValueType(m) == null,
+                        "A batched ElementEnd handler cannot return a ParseAction: %s", m);
+                EndInvoker.Controlling invoker = HandlerInvokers.endControllingInvoker(m);
+                return bindings -> bindings.onEndControlling(expression, parameterType, invoker);
+            }
+            if (parameterType.isPrimitive()) {
+                Object invoker = HandlerInvokers.primitiveEndInvoker(m);
+                return bindings -> bindPrimitive(bindings, expression, invoker);
+            }
+            EndInvoker invoker = HandlerInvokers.endInvoker(m);
+            Class<?> batchValueType = batchValueType(m);
+            if (batchValueType != null) {
+                int batchSize = m.getAnnotation(ElementEnd.class).batchSize();
+                return bindings -> bindings.onEndBatch(expression, parameterType, batchValueType,
+                        batchSize, invoker);
+            }
+            return bindings -> bindings.onEnd(expression, parameterType, invoker);
+        }
+
+        private static void bindPrimitive(HandlerBindings bindings, String expression,
+                Object invoker) {
+            if (invoker instanceof EndInvoker.OfInt) {
+                bindings.onEndInt(expression, (EndInvoker.OfInt) invoker);
+            } else if (invoker instanceof EndInvoker.OfLong) {
+                bindings.onEndLong(expression, (EndInvoker.OfLong) invoker);
+            } else if (invoker instanceof EndInvoker.OfDouble) {
+                bindings.onEndDouble(expression, (EndInvoker.OfDouble) invoker);
+            } else if (invoker instanceof EndInvoker.OfFloat) {
+                bindings.onEndFloat(expression, (EndInvoker.OfFloat) invoker);
+            } else {
+                bindings.onEndBoolean(expression, (EndInvoker.OfBoolean) invoker);
+            }
+        }
+
+        /**
+         * Returns the type of the values in the batch the method takes, or null if it takes a
+         * single value.
+         */
+        @Nullable
+        private static Class<?> batchValueType(Method m) {
+            Class<?> type = m.getParameterTypes()[0];
+            if (type.equals(int[].class) || type.equals(long[].class)
+                    || type.equals(double[].class)) {
+                return type.getComponentType();
+            }
+            if (!type.equals(List.class)) {
+                return null;
+            }
+            Type generic = m.getGenericParameterTypes()[0];
+            checkArgument(generic instanceof ParameterizedType
+                    && ((ParameterizedType) generic).getActualTypeArguments()[0] instanceof Class,
+                    "A batched ElementEnd handler must take a List of a value type: %s", m);
+            return (Class<?>) ((ParameterizedType) generic).getActualTypeArguments()[0];
+        }
+
+        @Override
+        public void bind(HandlerBindings bindings) {
+            methods.forEach(m -> m.accept(bindings));
+        }
+    }
+
+    private HandlerDispatchers() {/**/}
+
+}
@@ -0,0 +1,23 @@
+package tzeth.exhume.sax;
+
+import java.io.IOException;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Runs the handlers of a session elsewhere than on the parsing thread. The session reports the
+ * invocations to it as a sink.
+ */
+interface HandlerExecution extends InvocationSink {
+
+    @FunctionalInterface
+    interface Parse {
+        void run() throws SAXException, IOException;
+    }
+
+    /**
+     * Runs the parse on the calling thread, and returns when all handlers have run.
+     */
+    void run(Parse parse) throws SAXException, IOException;
+
+}
@@ -0,0 +1,104 @@
+package tzeth.exhume.sax;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Runs named groups of handlers each on a thread of its own, from a single parse.
+ * <p>
+ * Every group consumes the events of its handlers at its own pace, through a {@link Pipeline}.
+ * The pipelines are bounded, so a group that falls too far behind holds up the parse until it
+ * catches up; how far behind every group is can be read with {@link #lag(String)} while the parse
+ * is running. Handlers that are not in a group run on the parsing thread.
+ */
+final class HandlerGroups implements HandlerExecution {
+    private final List<String> names = new ArrayList<>();
+    private final Pipeline[] pipelines;
+    private final int[] groupOfSlot;
+
+    /**
+     * @param groups the group of the handler in every slot, or null for handlers that run on the
+     *            parsing thread
+     */
+    public HandlerGroups(Object[] handlers, List<String> groups) {
+        this.groupOfSlot = new int[handlers.length];
+        List<Object[]> handlersOfGroup = new ArrayList<>();
+        for (int slot = 0; slot < handlers.length; ++slot) {
+            String group = groups.get(slot);
+            if (group == null) {
+                groupOfSlot[slot] = -1;
+                continue;
+            }
+            int g = names.indexOf(group);
+            if (g < 0) {
+                g = names.size();
+                names.add(group);
+                handlersOfGroup.add(new Object[handlers.length]);
+            }
+            groupOfSlot[slot] = g;
+            handlersOfGroup.get(g)[slot] = handlers[slot];
+        }
+        this.pipelines = new Pipeline[names.size()];
+        for (int g = 0; g < pipelines.length; ++g) {
+            pipelines[g] = new Pipeline(handlersOfGroup.get(g), "exhume-group-" + names.get(g));
+        }
+    }
+
+    /**
+     * Returns the handlers that run on the parsing thread, with the slots of grouped handlers
+     * left empty.
+     */
+    public Object[] ungrouped(Object[] handlers) {
+        Object[] targets = handlers.clone();
+        for (int slot = 0; slot < targets.length; ++slot) {
+            if (groupOfSlot[slot] >= 0) {
+                targets[slot] = null;
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Returns the number of events the given group has yet to handle.
+     */
+    public long lag(String group) {
+        int g = names.indexOf(group);
+        if (g < 0) {
+            throw new IllegalArgumentException("No handler group named " + group);
+        }
+        return pipelines[g].lag();
+    }
+
+    @Override
+    public void run(Parse parse) throws SAXException, IOException {
+        for (Pipeline pipeline : pipelines) {
+            pipeline.start();
+        }
+        boolean completed = false;
+        try {
+            parse.run();
+            completed = true;
+        } finally {
+            Pipeline.finishAll(pipelines, completed);
+        }
+    }
+
+    @Override
+    public void start(StartBinding binding, StartOfElement soe) {
+        pipelines[groupOfSlot[binding.slot()]].start(binding, soe);
+    }
+
+    @Override
+    public void end(EndBinding binding, Object value) {
+        pipelines[groupOfSlot[binding.slot()]].end(binding, value);
+    }
+
+    @Override
+    public void endPrimitive(EndBinding binding, long value) {
+        pipelines[groupOfSlot[binding.slot()]].endPrimitive(binding, value);
+    }
+
+}
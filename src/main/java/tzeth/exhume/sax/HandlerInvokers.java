@@ -0,0 +1,351 @@
+package tzeth.exhume.sax;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import tzeth.exhume.ExhumeException;
+
+/**
+ * Binds handler methods to invoker interfaces, once per method.
+ * <p>
+ * Instance methods are bound with {@link LambdaMetafactory}, which gives a direct call the JIT can
+ * inline into the dispatch loop. Methods that cannot be called from this package, such as private
+ * methods or the methods of package-private classes elsewhere, are linked through a lookup in the
+ * class that declares them. Static methods, and methods whose class does not grant such a lookup
+ * (a class in a module that is not open to this one), fall back to a {@link MethodHandle}.
+ */
+final class HandlerInvokers {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final int ALL_MODES = MethodHandles.Lookup.PUBLIC
+            | MethodHandles.Lookup.PRIVATE | MethodHandles.Lookup.PROTECTED
+            | MethodHandles.Lookup.PACKAGE;
+    /** Creates a lookup in a given class: privateLookupIn on Java 9 and later. */
+    @Nullable
+    private static final Method PRIVATE_LOOKUP_IN = privateLookupIn();
+    /** Creates a lookup in a given class on Java 8. */
+    @Nullable
+    private static final Constructor<MethodHandles.Lookup> LOOKUP_CONSTRUCTOR =
+            PRIVATE_LOOKUP_IN == null ? lookupConstructor() : null;
+
+    /** The lookups in handler classes, or this class's lookup if none can be had. */
+    private static final ClassValue<MethodHandles.Lookup> LOOKUPS =
+            new ClassValue<MethodHandles.Lookup>() {
+        @Override
+        protected MethodHandles.Lookup computeValue(Class<?> type) {
+            return lookupIn(type);
+        }
+    };
+
+    private static final ClassValue<ConcurrentMap<Method, Object>> INVOKERS =
+            new ClassValue<ConcurrentMap<Method, Object>>() {
+        @Override
+        protected ConcurrentMap<Method, Object> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    public static StartInvoker startInvoker(Method method) {
+        return (StartInvoker) INVOKERS.get(method.getDeclaringClass())
+                .computeIfAbsent(method, HandlerInvokers::bindStartInvoker);
+    }
+
+    public static EndInvoker endInvoker(Method method) {
+        return (EndInvoker) INVOKERS.get(method.getDeclaringClass())
+                .computeIfAbsent(method, HandlerInvokers::bindEndInvoker);
+    }
+
+    public static StartInvoker.Controlling startControllingInvoker(Method method) {
+        return (StartInvoker.Controlling) INVOKERS.get(method.getDeclaringClass())
+                .computeIfAbsent(method, HandlerInvokers::bindStartControllingInvoker);
+    }
+
+    /**
+     * Binds a method that returns a {@link ParseAction}. A primitive parameter is passed boxed.
+     */
+    public static EndInvoker.Controlling endControllingInvoker(Method method) {
+        return (EndInvoker.Controlling) INVOKERS.get(method.getDeclaringClass())
+                .computeIfAbsent(method, HandlerInvokers::bindEndControllingInvoker);
+    }
+
+    /**
+     * Binds a method that takes a primitive to the matching specialization of
+     * {@link EndInvoker}, such as {@link EndInvoker.OfInt} for an {@code int}.
+     */
+    public static Object primitiveEndInvoker(Method method) {
+        return INVOKERS.get(method.getDeclaringClass())
+                .computeIfAbsent(method, HandlerInvokers::bindPrimitiveEndInvoker);
+    }
+
+    private static StartInvoker bindStartInvoker(Method method) {
+        MethodHandles.Lookup lookup = linkingLookup(method);
+        if (lookup != null) {
+            return (StartInvoker) spin(lookup, method, StartInvoker.class,
+                    MethodType.methodType(void.class, Object.class, StartOfElement.class));
+        }
+        MethodHandle mh = unreflect(method)
+                .asType(MethodType.methodType(void.class, Object.class, StartOfElement.class));
+        return (handler, soe) -> {
+            try {
+                mh.invokeExact(handler, soe);
+            } catch (Throwable t) {
+                throw sneakyThrow(t);
+            }
+        };
+    }
+
+    private static EndInvoker bindEndInvoker(Method method) {
+        MethodHandles.Lookup lookup = linkingLookup(method);
+        if (lookup != null) {
+            return (EndInvoker) spin(lookup, method, EndInvoker.class,
+                    MethodType.methodType(void.class, Object.class, Object.class));
+        }
+        MethodHandle mh = unreflect(method)
+                .asType(MethodType.methodType(void.class, Object.class, Object.class));
+        return (handler, value) -> {
+            try {
+                mh.invokeExact(handler, value);
+            } catch (Throwable t) {
+                throw sneakyThrow(t);
+            }
+        };
+    }
+
+    private static StartInvoker.Controlling bindStartControllingInvoker(Method method) {
+        MethodType samType = MethodType.methodType(ParseAction.class, Object.class,
+                StartOfElement.class);
+        MethodHandles.Lookup lookup = linkingLookup(method);
+        if (lookup != null) {
+            return (StartInvoker.Controlling) spin(lookup, method, StartInvoker.Controlling.class,
+                    samType);
+        }
+        MethodHandle mh = unreflect(method).asType(samType);
+        return (handler, soe) -> {
+            try {
+                return (ParseAction) mh.invokeExact(handler, soe);
+            } catch (Throwable t) {
+                throw sneakyThrow(t);
+            }
+        };
+    }
+
+    private static EndInvoker.Controlling bindEndControllingInvoker(Method method) {
+        MethodType samType = MethodType.methodType(ParseAction.class, Object.class,
+                Object.class);
+        MethodHandles.Lookup lookup = linkingLookup(method);
+        if (lookup != null) {
+            return (EndInvoker.Controlling) spin(lookup, method, EndInvoker.Controlling.class,
+                    samType);
+        }
+        MethodHandle mh = unreflect(method).asType(samType);
+        return (handler, value) -> {
+            try {
+                return (ParseAction) mh.invokeExact(handler, value);
+            } catch (Throwable t) {
+                throw sneakyThrow(t);
+            }
+        };
+    }
+
+    private static Object bindPrimitiveEndInvoker(Method method) {
+        Class<?> type = method.getParameterTypes()[0];
+        Class<?> invokerType = primitiveInvokerType(type);
+        MethodType samType = MethodType.methodType(void.class, Object.class, type);
+        MethodHandles.Lookup lookup = linkingLookup(method);
+        if (lookup != null) {
+            return spin(lookup, method, invokerType, samType);
+        }
+        MethodHandle mh = unreflect(method).asType(samType);
+        if (type == int.class) {
+            return (EndInvoker.OfInt) (handler, value) -> {
+                try {
+                    mh.invokeExact(handler, value);
+                } catch (Throwable t) {
+                    throw sneakyThrow(t);
+                }
+            };
+        } else if (type == long.class) {
+            return (EndInvoker.OfLong) (handler, value) -> {
+                try {
+                    mh.invokeExact(handler, value);
+                } catch (Throwable t) {
+                    throw sneakyThrow(t);
+                }
+            };
+        } else if (type == double.class) {
+            return (EndInvoker.OfDouble) (handler, value) -> {
+                try {
+                    mh.invokeExact(handler, value);
+                } catch (Throwable t) {
+                    throw sneakyThrow(t);
+                }
+            };
+        } else if (type == float.class) {
+            return (EndInvoker.OfFloat) (handler, value) -> {
+                try {
+                    mh.invokeExact(handler, value);
+                } catch (Throwable t) {
+                    throw sneakyThrow(t);
+                }
+            };
+        } else {
+            return (EndInvoker.OfBoolean) (handler, value) -> {
+                try {
+                    mh.invokeExact(handler, value);
+                } catch (Throwable t) {
+                    throw sneakyThrow(t);
+                }
+            };
+        }
+    }
+
+    private static Class<?> primitiveInvokerType(Class<?> type) {
+        if (type == int.class) {
+            return EndInvoker.OfInt.class;
+        } else if (type == long.class) {
+            return EndInvoker.OfLong.class;
+        } else if (type == double.class) {
+            return EndInvoker.OfDouble.class;
+        } else if (type == float.class) {
+            return EndInvoker.OfFloat.class;
+        } else if (type == boolean.class) {
+            return EndInvoker.OfBoolean.class;
+        }
+        throw new IllegalArgumentException(
+                "An ElementEnd handler can take an int, long, double, float or boolean, but not "
+                        + type.getName());
+    }
+
+    private static Object spin(MethodHandles.Lookup lookup, Method method, Class<?> invokerType,
+            MethodType samType) {
+        try {
+            MethodHandle impl = lookup.unreflect(method);
+            // A primitive parameter of a method that is called with an Object is unboxed
+            MethodType instantiatedType = samType.parameterType(1) == Object.class
+                    ? impl.type().wrap().changeReturnType(samType.returnType())
+                    : impl.type().changeReturnType(samType.returnType());
+            CallSite site = LambdaMetafactory.metafactory(lookup, "invoke",
+                    MethodType.methodType(invokerType), samType, impl, instantiatedType);
+            return site.getTarget().invoke();
+        } catch (Throwable t) {
+            throw new ExhumeException("Cannot bind handler method " + method, t);
+        }
+    }
+
+    private static MethodHandle unreflect(Method method) {
+        try {
+            method.setAccessible(true);
+            MethodHandle mh = LOOKUP.unreflect(method);
+            return Modifier.isStatic(method.getModifiers())
+                    ? MethodHandles.dropArguments(mh, 0, Object.class)
+                    : mh;
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new ExhumeException("Cannot access handler method " + method, e);
+        }
+    }
+
+    /**
+     * Returns the lookup to link a direct call to the method with, or null if there is none.
+     */
+    @Nullable
+    private static MethodHandles.Lookup linkingLookup(Method method) {
+        if (Modifier.isStatic(method.getModifiers())) {
+            return null;
+        }
+        if (isLinkable(method)) {
+            return LOOKUP;
+        }
+        MethodHandles.Lookup lookup = LOOKUPS.get(method.getDeclaringClass());
+        return lookup == LOOKUP ? null : lookup;
+    }
+
+    /**
+     * Returns true if a class in this package can call the method directly.
+     */
+    private static boolean isLinkable(Method method) {
+        if (Modifier.isPrivate(method.getModifiers())) {
+            return false;
+        }
+        Class<?> type = method.getDeclaringClass();
+        if (isInThisPackage(type)) {
+            return true;
+        }
+        if (!Modifier.isPublic(method.getModifiers())) {
+            return false;
+        }
+        for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+            if (!Modifier.isPublic(c.getModifiers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a lookup with private access in the given class, or this class's lookup if the
+     * runtime does not grant one.
+     */
+    private static MethodHandles.Lookup lookupIn(Class<?> type) {
+        try {
+            if (PRIVATE_LOOKUP_IN != null) {
+                return (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null, type, LOOKUP);
+            }
+            if (LOOKUP_CONSTRUCTOR != null) {
+                return LOOKUP_CONSTRUCTOR.newInstance(type, ALL_MODES);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Fall back to method handles
+        }
+        return LOOKUP;
+    }
+
+    @Nullable
+    private static Method privateLookupIn() {
+        try {
+            return MethodHandles.class.getMethod("privateLookupIn", Class.class,
+                    MethodHandles.Lookup.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Constructor<MethodHandles.Lookup> lookupConstructor() {
+        try {
+            Constructor<MethodHandles.Lookup> constructor = MethodHandles.Lookup.class
+                    .getDeclaredConstructor(Class.class, int.class);
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (NoSuchMethodException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean isInThisPackage(Class<?> type) {
+        return type.getClassLoader() == HandlerInvokers.class.getClassLoader()
+                && packageOf(type).equals(packageOf(HandlerInvokers.class));
+    }
+
+    private static String packageOf(Class<?> type) {
+        String name = type.getName();
+        return name.substring(0, Math.max(0, name.lastIndexOf('.')));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Throwable> RuntimeException sneakyThrow(Throwable t) throws T {
+        throw (T) t;
+    }
+
+    private HandlerInvokers() {/**/}
+
+}
@@ -0,0 +1,95 @@
+package tzeth.exhume.sax;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * Handler invocations recorded during a parse, to be run later, possibly on another thread.
+ * <p>
+ * The recorded events are detached from the parse: attributes are copied and paths resolved for
+ * start events, and end events carry the already converted value. The values of primitive end
+ * methods are kept in an array of {@code long}s alongside the events, so they are not boxed, and
+ * a log that is cleared and reused does not allocate for them.
+ */
+final class InvocationLog implements InvocationSink {
+    private Object[] bindings = new Object[64];
+    private Object[] events = new Object[64];
+    private long[] primitives = new long[64];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void start(StartBinding binding, StartOfElement soe) {
+        add(binding, soe.detach(), 0);
+    }
+
+    @Override
+    public void end(EndBinding binding, Object value) {
+        add(binding, value instanceof EndOfElement ? ((EndOfElement) value).detach() : value, 0);
+    }
+
+    @Override
+    public void endPrimitive(EndBinding binding, long value) {
+        add(binding, null, value);
+    }
+
+    /**
+     * Appends the invocations recorded in another log.
+     */
+    public void addAll(InvocationLog other) {
+        int newSize = size + other.size;
+        if (newSize > bindings.length) {
+            bindings = Arrays.copyOf(bindings, Math.max(newSize, 2 * size));
+            events = Arrays.copyOf(events, bindings.length);
+            primitives = Arrays.copyOf(primitives, bindings.length);
+        }
+        System.arraycopy(other.bindings, 0, bindings, size, other.size);
+        System.arraycopy(other.events, 0, events, size, other.size);
+        System.arraycopy(other.primitives, 0, primitives, size, other.size);
+        size = newSize;
+    }
+
+    private void add(Object binding, @Nullable Object event, long primitive) {
+        if (size == bindings.length) {
+            bindings = Arrays.copyOf(bindings, 2 * size);
+            events = Arrays.copyOf(events, 2 * size);
+            primitives = Arrays.copyOf(primitives, 2 * size);
+        }
+        bindings[size] = binding;
+        events[size] = event;
+        primitives[size] = primitive;
+        ++size;
+    }
+
+    /**
+     * Runs the recorded invocations, in order, on the given handlers, collecting the values for
+     * batched end methods in {@code batches}.
+     */
+    public void replay(Object[] handlers, EndBatches batches) {
+        for (int n = 0; n < size; ++n) {
+            Object binding = bindings[n];
+            if (binding instanceof StartBinding) {
+                StartBinding start = (StartBinding) binding;
+                start.invoke(handlers[start.slot()], (StartOfElement) events[n]);
+            } else {
+                EndBinding end = (EndBinding) binding;
+                if (end.isPrimitive()) {
+                    end.invokeWithPrimitive(handlers[end.slot()], primitives[n]);
+                } else {
+                    end.invokeWithValue(handlers[end.slot()], events[n], batches);
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(bindings, 0, size, null);
+        Arrays.fill(events, 0, size, null);
+        size = 0;
+    }
+
+}
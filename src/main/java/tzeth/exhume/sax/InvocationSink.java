@@ -0,0 +1,23 @@
+package tzeth.exhume.sax;
+
+/**
+ * Receives handler invocations that a parse session does not run itself.
+ */
+interface InvocationSink {
+
+    void start(StartBinding binding, StartOfElement soe);
+
+    /**
+     * @param value the element value, already converted to the type the method takes
+     */
+    void end(EndBinding binding, Object value);
+
+    /**
+     * Receives the invocation of a {@link EndBinding#isPrimitive() primitive} end method, so that
+     * the value is not boxed.
+     *
+     * @param value the element value, from {@link EndBinding#primitiveValue(EndOfElement)}
+     */
+    void endPrimitive(EndBinding binding, long value);
+
+}
@@ -0,0 +1,107 @@
+package tzeth.exhume.sax;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.annotation.Nullable;
+
+/**
+ * Reads a file as a sequence of memory-mapped chunks.
+ * <p>
+ * Only one chunk is mapped at a time: a chunk is unmapped as soon as the next one is requested,
+ * so reading a file of any size keeps neither the heap nor the address space growing. The chunks
+ * can be consumed directly with {@link #nextChunk()}, or through the {@link InputStream} methods
+ * by engines that read streams.
+ */
+final class MappedFileInput extends InputStream {
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+    private final int chunkSize;
+    private long mapped;
+    @Nullable
+    private MappedByteBuffer chunk;
+
+    public MappedFileInput(File file) throws IOException {
+        this(file, DEFAULT_CHUNK_SIZE);
+    }
+
+    MappedFileInput(File file, int chunkSize) throws IOException {
+        checkArgument(chunkSize > 0, "The chunk size must be positive");
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.size = channel.size();
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Unmaps the current chunk, and maps the next one. Returns null at the end of the file.
+     */
+    @Nullable
+    public ByteBuffer nextChunk() throws IOException {
+        unmapChunk();
+        if (mapped == size) {
+            return null;
+        }
+        int length = (int) Math.min(chunkSize, size - mapped);
+        chunk = channel.map(FileChannel.MapMode.READ_ONLY, mapped, length);
+        mapped += length;
+        return chunk;
+    }
+
+    @Override
+    public int read() throws IOException {
+        ByteBuffer current = remainingChunk();
+        return current == null ? -1 : current.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        ByteBuffer current = remainingChunk();
+        if (current == null) {
+            return -1;
+        }
+        int count = Math.min(len, current.remaining());
+        current.get(b, off, count);
+        return count;
+    }
+
+    @Nullable
+    private ByteBuffer remainingChunk() throws IOException {
+        ByteBuffer current = chunk;
+        while (current == null || !current.hasRemaining()) {
+            current = nextChunk();
+            if (current == null) {
+                return null;
+            }
+        }
+        return current;
+    }
+
+    @Override
+    public void close() throws IOException {
+        unmapChunk();
+        file.close();
+    }
+
+    private void unmapChunk() {
+        if (chunk != null) {
+            MappedByteBuffer done = chunk;
+            chunk = null;
+            Unmapper.unmap(done);
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package tzeth.exhume.sax;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Drives a {@link ParseSession} from a {@link NativeTokenizer}.
+ */
+final class NativeEngine {
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    public static void parseXml(String xml, ParseSession session) throws SAXException {
+        parseBuffer(ByteBuffer.wrap(xml.getBytes(StandardCharsets.UTF_8)), session);
+    }
+
+    public static void parseBuffer(ByteBuffer buffer, ParseSession session)
+            throws SAXException {
+        NativeTokenizer tokenizer = new NativeTokenizer(session);
+        tokenizer.feed(buffer);
+        tokenizer.end();
+    }
+
+    public static void parseFile(File file, ParseSession session)
+            throws SAXException, IOException {
+        try (FileInputStream stream = new FileInputStream(file)) {
+            FileChannel channel = stream.getChannel();
+            NativeTokenizer tokenizer = new NativeTokenizer(session);
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+            while (channel.read(chunk) >= 0) {
+                chunk.flip();
+                tokenizer.feed(chunk);
+                chunk.clear();
+            }
+            tokenizer.end();
+        }
+    }
+
+    public static void parseMapped(MappedFileInput input, ParseSession session)
+            throws SAXException, IOException {
+        NativeTokenizer tokenizer = new NativeTokenizer(session);
+        for (ByteBuffer chunk = input.nextChunk(); chunk != null; chunk = input.nextChunk()) {
+            tokenizer.feed(chunk);
+        }
+        tokenizer.end();
+    }
+
+    public static void parseStream(InputStream stream, ParseSession session)
+            throws SAXException, IOException {
+        NativeTokenizer tokenizer = new NativeTokenizer(session);
+        byte[] chunk = new byte[CHUNK_SIZE];
+        for (int count = stream.read(chunk); count >= 0; count = stream.read(chunk)) {
+            tokenizer.feed(ByteBuffer.wrap(chunk, 0, count));
+        }
+        tokenizer.end();
+    }
+
+    private NativeEngine() {/**/}
+
+}
@@ -0,0 +1,1009 @@
+package tzeth.exhume.sax;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+import javax.xml.XMLConstants;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+import tzeth.exhume.ExhumeException;
+
+/**
+ * A push tokenizer for UTF-8 encoded XML that drives a {@link ParseSession} directly from bytes.
+ * <p>
+ * Element names are interned as byte slices, without being decoded. Text is decoded only for
+ * elements whose text is collected, straight into the session's text buffer, and attribute values
+ * are decoded only when a handler asks for them. In a subtree that the session skips, names are
+ * not interned at all; they are kept as raw bytes until their end tags are checked.
+ * <p>
+ * Input is fed in chunks of any size. A token that straddles two chunks is copied to a carry
+ * buffer; nothing else is copied, and no reference to a chunk is kept once
+ * {@link #feed(ByteBuffer)} returns.
+ * <p>
+ * Only the subset of XML that the handlers need is supported: no DTDs, no entities beyond the
+ * predefined ones and character references, and UTF-8 (or ASCII) only. Comments and processing
+ * instructions are skipped. Like the other engines, element names are not namespace aware, but
+ * attributes can be looked up by namespace URI and local name.
+ */
+final class NativeTokenizer {
+    private final ParseSession session;
+    private final ElementNames names;
+    private final ByteAttributes attributes = new ByteAttributes();
+    private final TextBuffer scratch = new TextBuffer();
+    /** The name ids of the open elements, up to the first one that is skipped. */
+    private int[] open = new int[16];
+    /** The number of open elements, including skipped ones. */
+    private int depth;
+    /** The names of the open elements that are skipped, back to back. */
+    private byte[] skippedNames = new byte[256];
+    private int[] skippedNameEnds = new int[16];
+    private int skipped;
+    /** The namespace prefixes declared on the open elements, innermost last. */
+    private String[] namespacePrefixes = new String[4];
+    private String[] namespaceUris = new String[4];
+    /** The depth of the element that declares every prefix. */
+    private int[] namespaceDepths = new int[4];
+    private int namespaces;
+    private boolean rootSeen;
+    private boolean atStart = true;
+    private boolean ended;
+    private byte[] carry = new byte[256];
+    private int carryLength;
+    /** Absolute offset of the first byte that has not been consumed. */
+    private long consumed;
+    /** Absolute offset of index 0 of the buffer being tokenized, for error messages. */
+    private long bufferOffset;
+
+    public NativeTokenizer(ParseSession session) {
+        this(session, 0);
+    }
+
+    /**
+     * Creates a tokenizer for input that starts at the given offset of a file, which is used in
+     * error messages.
+     */
+    public NativeTokenizer(ParseSession session, long offset) {
+        this.session = session;
+        this.names = session.names();
+        this.consumed = offset;
+    }
+
+    /**
+     * Tokenizes the remaining bytes of the given buffer. Its position is moved to its limit.
+     */
+    public void feed(ByteBuffer input) throws SAXException {
+        checkState(!ended, "The end of the input has already been reached");
+        int position = input.position();
+        int limit = input.limit();
+        if (carryLength > 0) {
+            position = feedCarry(input, position, limit);
+        }
+        if (carryLength == 0 && position < limit) {
+            bufferOffset = consumed - position;
+            int stop = tokenize(input, position, limit, false);
+            consumed += stop - position;
+            appendToCarry(input, stop, limit);
+        }
+        input.position(limit);
+    }
+
+    /**
+     * Signals the end of the input, and checks that the document is complete.
+     */
+    public void end() throws SAXException {
+        checkState(!ended, "The end of the input has already been reached");
+        ended = true;
+        if (carryLength > 0) {
+            bufferOffset = consumed;
+            tokenize(ByteBuffer.wrap(carry, 0, carryLength), 0, carryLength, true);
+            carryLength = 0;
+        }
+        if (!rootSeen) {
+            throw error("Premature end of file", consumed);
+        }
+        if (depth > 0) {
+            throw error("Element " + openName() + " is not closed", consumed);
+        }
+    }
+
+    /**
+     * Opens the given elements without reporting them, to tokenize a fragment of a document that
+     * starts inside them.
+     */
+    public void enter(int[] ancestors) {
+        checkState(atStart && depth == 0, "Elements can only be entered before the input");
+        for (int id : ancestors) {
+            if (depth == open.length) {
+                open = Arrays.copyOf(open, 2 * depth);
+            }
+            open[depth++] = id;
+            session.enter(id);
+        }
+        rootSeen = true;
+        atStart = false;
+    }
+
+    /**
+     * Signals the end of a fragment of a document, and checks that it ends with the given number of
+     * elements open.
+     */
+    public void endFragment(int expectedDepth) throws SAXException {
+        checkState(!ended, "The end of the input has already been reached");
+        ended = true;
+        if (carryLength > 0) {
+            bufferOffset = consumed;
+            tokenize(ByteBuffer.wrap(carry, 0, carryLength), 0, carryLength, true);
+            carryLength = 0;
+        }
+        if (depth != expectedDepth) {
+            throw error("Expected " + expectedDepth + " open elements at the end of the fragment, "
+                    + "but there are " + depth, consumed);
+        }
+    }
+
+    /**
+     * Moves bytes from the input to the carry buffer until the token that was cut off completes,
+     * and returns the position in the input from where tokenizing can continue directly.
+     */
+    private int feedCarry(ByteBuffer input, int position, int limit) throws SAXException {
+        int step = Math.max(carryLength, 64);
+        while (position < limit) {
+            int count = Math.min(step, limit - position);
+            int appendedAt = carryLength;
+            appendToCarry(input, position, position + count);
+            bufferOffset = consumed;
+            int stop = tokenize(ByteBuffer.wrap(carry, 0, carryLength), 0, carryLength, false);
+            consumed += stop;
+            if (stop >= appendedAt) {
+                carryLength = 0;
+                return position + (stop - appendedAt);
+            }
+            System.arraycopy(carry, stop, carry, 0, carryLength - stop);
+            carryLength -= stop;
+            position += count;
+            step *= 2;
+        }
+        return limit;
+    }
+
+    private void appendToCarry(ByteBuffer input, int from, int to) {
+        int count = to - from;
+        if (carryLength + count > carry.length) {
+            carry = Arrays.copyOf(carry, Math.max(carryLength + count, 2 * carry.length));
+        }
+        for (int n = 0; n < count; ++n) {
+            carry[carryLength + n] = input.get(from + n);
+        }
+        carryLength += count;
+    }
+
+    /**
+     * Tokenizes the given range, and returns the position of the first byte of the first token that
+     * is incomplete. If {@code last} is set, an incomplete token is an error.
+     */
+    private int tokenize(ByteBuffer b, int position, int limit, boolean last)
+            throws SAXException {
+        int p = position;
+        if (atStart) {
+            if (limit - p < 3 && !last) {
+                return p;
+            }
+            if (limit - p >= 3 && b.get(p) == (byte) 0xEF && b.get(p + 1) == (byte) 0xBB
+                    && b.get(p + 2) == (byte) 0xBF) {
+                p += 3;
+            }
+        }
+        while (p < limit) {
+            int next = b.get(p) == '<'
+                    ? markup(b, p, limit)
+                    : text(b, p, limit, last);
+            if (next < 0 || next == p) {
+                if (last) {
+                    throw error("Premature end of file", p);
+                }
+                return p;
+            }
+            atStart = false;
+            p = next;
+        }
+        return p;
+    }
+
+    private int text(ByteBuffer b, int start, int limit, boolean last) throws SAXException {
+        if (depth == 0) {
+            int p = start;
+            while (p < limit && isWhitespace(b.get(p))) {
+                ++p;
+            }
+            if (p < limit && b.get(p) != '<') {
+                throw error("Content is not allowed outside the root element", p);
+            }
+            return p;
+        }
+        if (!session.collectsText()) {
+            int p = start;
+            while (p < limit && b.get(p) != '<') {
+                ++p;
+            }
+            return p;
+        }
+        TextBuffer text = session.text();
+        int p = start;
+        while (p < limit) {
+            byte c = b.get(p);
+            if (c == '<') {
+                break;
+            }
+            if (c == '&') {
+                int next = entity(b, p, limit, text);
+                if (next < 0) {
+                    break;
+                }
+                p = next;
+                continue;
+            }
+            int end = p + 1;
+            while (end < limit && b.get(end) != '<' && b.get(end) != '&') {
+                ++end;
+            }
+            if (end == limit && !last && b.get(end - 1) == '\r') {
+                --end;
+            }
+            int decoded = decode(b, p, end, text);
+            if (decoded < end) {
+                if (last || end < limit) {
+                    throw error("Invalid UTF-8 sequence", decoded);
+                }
+                return decoded;
+            }
+            if (end == p) {
+                break;
+            }
+            p = end;
+        }
+        return p;
+    }
+
+    private int markup(ByteBuffer b, int start, int limit) throws SAXException {
+        if (start + 1 >= limit) {
+            return -1;
+        }
+        switch (b.get(start + 1)) {
+        case '/':
+            return endTag(b, start, limit);
+        case '?':
+            return processingInstruction(b, start, limit);
+        case '!':
+            return declaration(b, start, limit);
+        default:
+            return startTag(b, start, limit);
+        }
+    }
+
+    private int startTag(ByteBuffer b, int start, int limit) throws SAXException {
+        int nameStart = start + 1;
+        int p = nameEnd(b, nameStart, limit);
+        if (p == limit) {
+            return -1;
+        }
+        if (p == nameStart) {
+            throw error("Invalid element name", p);
+        }
+        int nameEnd = p;
+        attributes.clear();
+        boolean empty;
+        while (true) {
+            p = skipWhitespace(b, p, limit);
+            if (p == limit) {
+                return -1;
+            }
+            byte c = b.get(p);
+            if (c == '>') {
+                empty = false;
+                ++p;
+                break;
+            }
+            if (c == '/') {
+                if (p + 1 == limit) {
+                    return -1;
+                }
+                if (b.get(p + 1) != '>') {
+                    throw error("Expected '>'", p + 1);
+                }
+                empty = true;
+                p += 2;
+                break;
+            }
+            p = attribute(b, p, limit);
+            if (p < 0) {
+                return -1;
+            }
+        }
+        if (depth == 0 && rootSeen) {
+            throw error("Only one root element is allowed", start);
+        }
+        rootSeen = true;
+        if (session.skipsChildren()) {
+            session.skippedStart();
+            if (empty) {
+                session.endElement("", "");
+            } else {
+                pushSkipped(b, nameStart, nameEnd);
+            }
+            return p;
+        }
+        int id = names.intern(b, nameStart, nameEnd);
+        if (depth == open.length) {
+            open = Arrays.copyOf(open, 2 * depth);
+        }
+        open[depth++] = id;
+        attributes.buffer = b;
+        try {
+            declareNamespaces();
+            session.startElement("", "", id, attributes);
+        } catch (ExhumeException e) {
+            if (attributes.invalidValue == null) {
+                throw e;
+            }
+        } finally {
+            attributes.buffer = null;
+        }
+        if (attributes.invalidValue != null) {
+            throw attributes.invalidValue;
+        }
+        if (empty) {
+            --depth;
+            undeclareNamespaces();
+            session.endElement("", "");
+        }
+        return p;
+    }
+
+    /**
+     * Puts the namespace prefixes that the current start tag declares in scope.
+     */
+    private void declareNamespaces() {
+        for (int n = 0; n < attributes.length; ++n) {
+            int nameStart = attributes.offsets[4 * n];
+            int nameEnd = attributes.offsets[4 * n + 1];
+            if (nameEnd - nameStart <= XMLNS.length
+                    || !equals(XMLNS, attributes.buffer, nameStart, nameStart + XMLNS.length)
+                    || attributes.buffer.get(nameStart + XMLNS.length) != ':') {
+                continue;
+            }
+            if (namespaces == namespacePrefixes.length) {
+                namespacePrefixes = Arrays.copyOf(namespacePrefixes, 2 * namespaces);
+                namespaceUris = Arrays.copyOf(namespaceUris, 2 * namespaces);
+                namespaceDepths = Arrays.copyOf(namespaceDepths, 2 * namespaces);
+            }
+            namespacePrefixes[namespaces] = utf8(attributes.buffer,
+                    nameStart + XMLNS.length + 1, nameEnd);
+            namespaceUris[namespaces] = attributes.getValue(n);
+            namespaceDepths[namespaces++] = depth;
+        }
+    }
+
+    /**
+     * Takes the namespace prefixes of the elements that are no longer open out of scope.
+     */
+    private void undeclareNamespaces() {
+        while (namespaces > 0 && namespaceDepths[namespaces - 1] > depth) {
+            --namespaces;
+            namespacePrefixes[namespaces] = null;
+            namespaceUris[namespaces] = null;
+        }
+    }
+
+    private int attribute(ByteBuffer b, int start, int limit) throws SAXException {
+        int p = start;
+        while (p < limit && b.get(p) != '=' && !isWhitespace(b.get(p)) && b.get(p) != '>'
+                && b.get(p) != '/') {
+            ++p;
+        }
+        int nameEnd = p;
+        p = skipWhitespace(b, p, limit);
+        if (p == limit) {
+            return -1;
+        }
+        if (nameEnd == start || b.get(p) != '=') {
+            throw error("Expected an attribute", start);
+        }
+        p = skipWhitespace(b, p + 1, limit);
+        if (p == limit) {
+            return -1;
+        }
+        byte quote = b.get(p);
+        if (quote != '"' && quote != '\'') {
+            throw error("Expected a quoted attribute value", p);
+        }
+        int valueStart = p + 1;
+        int valueEnd = indexOf(b, valueStart, limit, quote);
+        if (valueEnd < 0) {
+            return -1;
+        }
+        attributes.add(start, nameEnd, valueStart, valueEnd);
+        return valueEnd + 1;
+    }
+
+    private int endTag(ByteBuffer b, int start, int limit) throws SAXException {
+        int nameStart = start + 2;
+        int nameEnd = nameEnd(b, nameStart, limit);
+        int p = skipWhitespace(b, nameEnd, limit);
+        if (p == limit) {
+            return -1;
+        }
+        if (b.get(p) != '>') {
+            throw error("Expected '>'", p);
+        }
+        if (depth == 0) {
+            throw error("Unexpected end tag", start);
+        }
+        if (skipped > 0) {
+            int nameOffset = skipped == 1 ? 0 : skippedNameEnds[skipped - 2];
+            if (!equals(skippedNames, nameOffset, skippedNameEnds[skipped - 1], b, nameStart,
+                    nameEnd)) {
+                throw error("The end tag does not match element " + openName(), start);
+            }
+            --skipped;
+        } else if (!equals(names.encodedName(open[depth - 1]), b, nameStart, nameEnd)) {
+            throw error("The end tag does not match element " + openName(), start);
+        }
+        --depth;
+        undeclareNamespaces();
+        session.endElement("", "");
+        return p + 1;
+    }
+
+    private void pushSkipped(ByteBuffer b, int nameStart, int nameEnd) {
+        if (skipped == skippedNameEnds.length) {
+            skippedNameEnds = Arrays.copyOf(skippedNameEnds, 2 * skipped);
+        }
+        int offset = skipped == 0 ? 0 : skippedNameEnds[skipped - 1];
+        int end = offset + nameEnd - nameStart;
+        if (end > skippedNames.length) {
+            skippedNames = Arrays.copyOf(skippedNames, Math.max(end, 2 * skippedNames.length));
+        }
+        for (int n = nameStart; n < nameEnd; ++n) {
+            skippedNames[offset++] = b.get(n);
+        }
+        skippedNameEnds[skipped++] = end;
+        ++depth;
+    }
+
+    /**
+     * Returns the name of the innermost open element.
+     */
+    private String openName() {
+        if (skipped == 0) {
+            return names.name(open[depth - 1]);
+        }
+        int offset = skipped == 1 ? 0 : skippedNameEnds[skipped - 2];
+        return new String(skippedNames, offset, skippedNameEnds[skipped - 1] - offset,
+                StandardCharsets.UTF_8);
+    }
+
+    private int processingInstruction(ByteBuffer b, int start, int limit) throws SAXException {
+        int end = indexOf(b, start + 2, limit, "?>");
+        if (end < 0) {
+            return -1;
+        }
+        int targetEnd = nameEnd(b, start + 2, end);
+        if (targetEnd - start == 5 && equals(XML, b, start + 2, targetEnd)) {
+            if (!atStart) {
+                throw error("The XML declaration must be at the start of the document", start);
+            }
+            checkEncoding(b, targetEnd, end);
+        }
+        return end + 2;
+    }
+
+    private void checkEncoding(ByteBuffer b, int start, int end) throws SAXException {
+        int p = indexOf(b, start, end, "encoding");
+        if (p < 0) {
+            return;
+        }
+        p = skipWhitespace(b, p + 8, end);
+        if (p < end && b.get(p) == '=') {
+            p = skipWhitespace(b, p + 1, end);
+        }
+        if (p < end) {
+            int valueEnd = indexOf(b, p + 1, end, b.get(p));
+            if (valueEnd > 0) {
+                String encoding = ascii(b, p + 1, valueEnd);
+                if (encoding.equalsIgnoreCase("UTF-8") || encoding.equalsIgnoreCase("UTF8")
+                        || encoding.equalsIgnoreCase("US-ASCII")
+                        || encoding.equalsIgnoreCase("ASCII")) {
+                    return;
+                }
+                throw error("Unsupported encoding " + encoding + "; only UTF-8 is supported",
+                        p);
+            }
+        }
+        throw error("Malformed XML declaration", start);
+    }
+
+    private int declaration(ByteBuffer b, int start, int limit) throws SAXException {
+        if (startsWith(b, start, limit, "<!--")) {
+            int end = indexOf(b, start + 4, limit, "-->");
+            return end < 0 ? -1 : end + 3;
+        }
+        if (startsWith(b, start, limit, "<![CDATA[")) {
+            int end = indexOf(b, start + 9, limit, "]]>");
+            if (end < 0) {
+                return -1;
+            }
+            if (depth == 0) {
+                throw error("CDATA is not allowed outside the root element", start);
+            }
+            if (session.collectsText() && decode(b, start + 9, end, session.text()) < end) {
+                throw error("Invalid UTF-8 sequence", start);
+            }
+            return end + 3;
+        }
+        if (limit - start < 9) {
+            return -1;
+        }
+        if (startsWith(b, start, limit, "<!DOCTYPE")) {
+            throw error("Document type declarations are not supported", start);
+        }
+        throw error("Invalid markup", start);
+    }
+
+    /**
+     * Appends the character for the entity or character reference at the given position, and
+     * returns the position after it, or -1 if the reference is incomplete.
+     */
+    private int entity(ByteBuffer b, int start, int limit, TextBuffer out) throws SAXException {
+        int end = indexOf(b, start + 1, Math.min(limit, start + 12), (byte) ';');
+        if (end < 0) {
+            if (limit - start < 12) {
+                return -1;
+            }
+            throw error("Unterminated entity reference", start);
+        }
+        String name = ascii(b, start + 1, end);
+        switch (name) {
+        case "lt":
+            out.append('<');
+            break;
+        case "gt":
+            out.append('>');
+            break;
+        case "amp":
+            out.append('&');
+            break;
+        case "quot":
+            out.append('"');
+            break;
+        case "apos":
+            out.append('\'');
+            break;
+        default:
+            appendCodePoint(characterReference(name, start), out);
+            break;
+        }
+        return end + 1;
+    }
+
+    private int characterReference(String name, int position) throws SAXException {
+        try {
+            int codePoint;
+            if (name.startsWith("#x")) {
+                codePoint = Integer.parseInt(name.substring(2), 16);
+            } else if (name.startsWith("#")) {
+                codePoint = Integer.parseInt(name.substring(1));
+            } else {
+                throw error("Undeclared entity &" + name + ";", position);
+            }
+            if (codePoint > 0 && Character.isValidCodePoint(codePoint)) {
+                return codePoint;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw error("Invalid character reference &" + name + ";", position);
+    }
+
+    private static void appendCodePoint(int codePoint, TextBuffer out) {
+        if (Character.isBmpCodePoint(codePoint)) {
+            out.append((char) codePoint);
+        } else {
+            out.append(Character.highSurrogate(codePoint));
+            out.append(Character.lowSurrogate(codePoint));
+        }
+    }
+
+    /**
+     * Decodes UTF-8 text in the given range to the buffer, normalizing line ends. Returns the
+     * position of the first byte that could not be decoded, which is {@code end} unless the range
+     * ends with an incomplete or invalid sequence.
+     */
+    private static int decode(ByteBuffer b, int start, int end, TextBuffer out) {
+        char[] chars = out.reserve(end - start);
+        int o = out.length();
+        int p = start;
+        while (p < end) {
+            int c = b.get(p);
+            if (c >= 0) {
+                if (c == '\r') {
+                    chars[o++] = '\n';
+                    p += p + 1 < end && b.get(p + 1) == '\n' ? 2 : 1;
+                } else {
+                    chars[o++] = (char) c;
+                    ++p;
+                }
+                continue;
+            }
+            int more;
+            int codePoint;
+            if ((c & 0xE0) == 0xC0) {
+                more = 1;
+                codePoint = c & 0x1F;
+            } else if ((c & 0xF0) == 0xE0) {
+                more = 2;
+                codePoint = c & 0x0F;
+            } else if ((c & 0xF8) == 0xF0) {
+                more = 3;
+                codePoint = c & 0x07;
+            } else {
+                break;
+            }
+            if (p + more >= end) {
+                break;
+            }
+            boolean valid = true;
+            for (int n = 1; n <= more; ++n) {
+                int continuation = b.get(p + n);
+                valid &= (continuation & 0xC0) == 0x80;
+                codePoint = (codePoint << 6) | (continuation & 0x3F);
+            }
+            // Overlong forms, surrogates and code points beyond Unicode are invalid as well
+            if (!valid || codePoint < MIN_CODE_POINTS[more]
+                    || codePoint > Character.MAX_CODE_POINT
+                    || (codePoint >= Character.MIN_SURROGATE
+                            && codePoint <= Character.MAX_SURROGATE)) {
+                break;
+            }
+            if (more == 3) {
+                chars[o++] = Character.highSurrogate(codePoint);
+                chars[o++] = Character.lowSurrogate(codePoint);
+            } else {
+                chars[o++] = (char) codePoint;
+            }
+            p += more + 1;
+        }
+        out.setLength(o);
+        return p;
+    }
+
+    private SAXException error(String message, int position) {
+        return error(message, bufferOffset + position);
+    }
+
+    private static SAXException error(String message, long offset) {
+        return new SAXException(message + " (at byte " + offset + ")");
+    }
+
+    private static int nameEnd(ByteBuffer b, int start, int limit) {
+        int p = start;
+        while (p < limit) {
+            byte c = b.get(p);
+            if (c == '>' || c == '/' || isWhitespace(c)) {
+                break;
+            }
+            ++p;
+        }
+        return p;
+    }
+
+    private static int skipWhitespace(ByteBuffer b, int start, int limit) {
+        int p = start;
+        while (p < limit && isWhitespace(b.get(p))) {
+            ++p;
+        }
+        return p;
+    }
+
+    private static boolean isWhitespace(byte c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r';
+    }
+
+    private static int indexOf(ByteBuffer b, int start, int limit, byte c) {
+        for (int p = start; p < limit; ++p) {
+            if (b.get(p) == c) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer b, int start, int limit, String s) {
+        for (int p = start; p + s.length() <= limit; ++p) {
+            if (startsWith(b, p, limit, s)) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(ByteBuffer b, int start, int limit, String s) {
+        if (limit - start < s.length()) {
+            return false;
+        }
+        for (int n = 0; n < s.length(); ++n) {
+            if (b.get(start + n) != s.charAt(n)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final byte[] XML = { 'x', 'm', 'l' };
+
+    private static final byte[] XMLNS = { 'x', 'm', 'l', 'n', 's' };
+
+    /** The smallest code point of a UTF-8 sequence, by the number of continuation bytes. */
+    private static final int[] MIN_CODE_POINTS = { 0, 0x80, 0x800, 0x10000 };
+
+    /** The bits of the first byte of a UTF-8 sequence, by the number of continuation bytes. */
+    private static final int[] LEAD_BYTES = { 0, 0xC0, 0xE0, 0xF0 };
+
+    private static boolean equals(byte[] bytes, ByteBuffer b, int start, int end) {
+        return equals(bytes, 0, bytes.length, b, start, end);
+    }
+
+    private static boolean equals(byte[] bytes, int from, int to, ByteBuffer b, int start,
+            int end) {
+        if (to - from != end - start) {
+            return false;
+        }
+        for (int n = 0; n < to - from; ++n) {
+            if (bytes[from + n] != b.get(start + n)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the bytes from start to end are the UTF-8 encoding of the given string,
+     * comparing them in place.
+     */
+    private static boolean encodes(ByteBuffer b, int start, int end, String s) {
+        int p = start;
+        for (int n = 0; n < s.length(); ++n) {
+            int c = s.codePointAt(n);
+            if (c < 0x80) {
+                if (p == end || b.get(p++) != c) {
+                    return false;
+                }
+                continue;
+            }
+            if (c >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                ++n;
+            }
+            int more = c < 0x800 ? 1 : c < 0x10000 ? 2 : 3;
+            if (end - p <= more || b.get(p++) != (byte) (LEAD_BYTES[more] | c >> 6 * more)) {
+                return false;
+            }
+            for (int shift = 6 * (more - 1); shift >= 0; shift -= 6) {
+                if (b.get(p++) != (byte) (0x80 | (c >> shift & 0x3F))) {
+                    return false;
+                }
+            }
+        }
+        return p == end;
+    }
+
+    private static String utf8(ByteBuffer b, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int n = 0; n < bytes.length; ++n) {
+            bytes[n] = b.get(start + n);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String ascii(ByteBuffer b, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int n = 0; n < chars.length; ++n) {
+            chars[n] = (char) (b.get(start + n) & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * The attributes of the current start tag, as offsets into the buffer being tokenized. Names
+     * and values are decoded on access, and only during the start element callback. A value that
+     * cannot be decoded fails the access with an unchecked exception, and the parse with the
+     * {@link #invalidValue} once the callback returns.
+     */
+    private final class ByteAttributes implements Attributes {
+        private ByteBuffer buffer;
+        private int[] offsets = new int[16];
+        private int length;
+        @Nullable
+        private SAXException invalidValue;
+
+        public void clear() {
+            length = 0;
+            invalidValue = null;
+        }
+
+        public void add(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+            if (4 * length + 4 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+            }
+            int o = 4 * length++;
+            offsets[o] = nameStart;
+            offsets[o + 1] = nameEnd;
+            offsets[o + 2] = valueStart;
+            offsets[o + 3] = valueEnd;
+        }
+
+        @Override
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * Returns the namespace URI of the prefix of an attribute, or the empty string if it has
+         * no prefix or the prefix is not declared.
+         */
+        @Override
+        public String getURI(int index) {
+            if (index < 0 || index >= length) {
+                return null;
+            }
+            checkState(buffer != null, "Attributes are only available during the start event");
+            int start = offsets[4 * index];
+            int colon = colon(index);
+            if (colon < 0) {
+                return "";
+            }
+            if (NativeTokenizer.equals(XML, buffer, start, colon)) {
+                return XMLConstants.XML_NS_URI;
+            }
+            if (NativeTokenizer.equals(XMLNS, buffer, start, colon)) {
+                return XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+            }
+            for (int n = namespaces - 1; n >= 0; --n) {
+                if (encodes(buffer, start, colon, namespacePrefixes[n])) {
+                    return namespaceUris[n];
+                }
+            }
+            return "";
+        }
+
+        @Override
+        public String getLocalName(int index) {
+            if (index < 0 || index >= length) {
+                return null;
+            }
+            checkState(buffer != null, "Attributes are only available during the start event");
+            return utf8(buffer, localNameStart(index), offsets[4 * index + 1]);
+        }
+
+        @Override
+        public String getQName(int index) {
+            if (index < 0 || index >= length) {
+                return null;
+            }
+            checkState(buffer != null, "Attributes are only available during the start event");
+            return utf8(buffer, offsets[4 * index], offsets[4 * index + 1]);
+        }
+
+        /**
+         * Returns the position of the colon after the prefix of an attribute name, or -1 if it has
+         * no prefix.
+         */
+        private int colon(int index) {
+            for (int p = offsets[4 * index]; p < offsets[4 * index + 1]; ++p) {
+                if (buffer.get(p) == ':') {
+                    return p;
+                }
+            }
+            return -1;
+        }
+
+        private int localNameStart(int index) {
+            int colon = colon(index);
+            return colon < 0 ? offsets[4 * index] : colon + 1;
+        }
+
+        @Override
+        public String getType(int index) {
+            return index >= 0 && index < length ? "CDATA" : null;
+        }
+
+        @Override
+        public String getValue(int index) {
+            if (index < 0 || index >= length) {
+                return null;
+            }
+            checkState(buffer != null, "Attributes are only available during the start event");
+            scratch.setLength(0);
+            int p = offsets[4 * index + 2];
+            int end = offsets[4 * index + 3];
+            try {
+                while (p < end) {
+                    byte c = buffer.get(p);
+                    if (c == '&') {
+                        p = entity(buffer, p, end, scratch);
+                        if (p < 0) {
+                            throw error("Unterminated entity reference", end);
+                        }
+                    } else if (c == '\r' || c == '\n' || c == '\t') {
+                        scratch.append(' ');
+                        p += c == '\r' && p + 1 < end && buffer.get(p + 1) == '\n' ? 2 : 1;
+                    } else {
+                        int stop = p + 1;
+                        while (stop < end && buffer.get(stop) != '&' && !isWhitespace(
+                                buffer.get(stop))) {
+                            ++stop;
+                        }
+                        if (decode(buffer, p, stop, scratch) < stop) {
+                            throw error("Invalid UTF-8 sequence", p);
+                        }
+                        p = stop;
+                    }
+                }
+            } catch (SAXException e) {
+                if (invalidValue == null) {
+                    invalidValue = e;
+                }
+                throw new ExhumeException(e);
+            }
+            return scratch.toString();
+        }
+
+        @Override
+        public int getIndex(String uri, String localName) {
+            checkState(buffer != null, "Attributes are only available during the start event");
+            for (int n = 0; n < length; ++n) {
+                if (encodes(buffer, localNameStart(n), offsets[4 * n + 1], localName)
+                        && uri.equals(getURI(n))) {
+                    return n;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int getIndex(String qName) {
+            checkState(buffer != null, "Attributes are only available during the start event");
+            for (int n = 0; n < length; ++n) {
+                if (encodes(buffer, offsets[4 * n], offsets[4 * n + 1], qName)) {
+                    return n;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public String getType(String uri, String localName) {
+            return getIndex(uri, localName) < 0 ? null : "CDATA";
+        }
+
+        @Override
+        public String getType(String qName) {
+            return getIndex(qName) < 0 ? null : "CDATA";
+        }
+
+        @Override
+        public String getValue(String uri, String localName) {
+            return getValue(getIndex(uri, localName));
+        }
+
+        @Override
+        public String getValue(String qName) {
+            return getValue(getIndex(qName));
+        }
+    }
+
+}
@@ -0,0 +1,291 @@
+package tzeth.exhume.sax;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BinaryOperator;
+import java.util.function.IntFunction;
+
+import org.xml.sax.SAXException;
+
+import com.google.common.collect.ImmutableList;
+
+import tzeth.exhume.ExhumeException;
+import tzeth.exhume.sax.PathExpression.Name;
+import tzeth.exhume.sax.PathExpression.Particle;
+
+/**
+ * Parses a file that is a long list of sibling records in chunks, in parallel.
+ * <p>
+ * The file is split in front of start tags of the record element, and every chunk is tokenized
+ * by a {@link NativeTokenizer} on a fork-join pool, with the elements that enclose the records
+ * entered up front. A handler with a merge function gets one object per chunk, and the objects
+ * are merged in document order. The invocations of every other handler are recorded per chunk,
+ * and replayed in document order on a single handler object on the calling thread.
+ * <p>
+ * Boundaries are found by looking for the record start tag after a {@code >}, so the record tag
+ * must not occur in comments or CDATA sections, and records must not be nested in records. A
+ * boundary that is not a record start is reported as a parse error.
+ * <p>
+ * Chunks after the first start inside the enclosing elements, without their attributes, so the
+ * handlers cannot have attribute predicates on elements with the names of enclosing elements.
+ */
+final class ParallelFileParse {
+    static final long DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int READ_SIZE = 256 * 1024;
+
+    private final ParsePlan plan;
+    private final IntFunction<Object> handlerFactory;
+    private final List<BinaryOperator<Object>> merges;
+    private final String[] context;
+    private final byte[] recordTag;
+    private final long chunkSize;
+
+    /**
+     * @param merges the merge function of every handler slot, or null for handlers that get their
+     *            events in document order
+     */
+    public ParallelFileParse(ParsePlan plan, IntFunction<Object> handlerFactory,
+            List<BinaryOperator<Object>> merges, String recordPath, long chunkSize) {
+        checkArgument(chunkSize > 0, "The chunk size must be positive");
+        this.plan = plan;
+        this.handlerFactory = handlerFactory;
+        this.merges = new ArrayList<>(merges);
+        PathExpression expression = PathExpression.of(recordPath);
+        ImmutableList<Particle> particles = expression.particles();
+        checkArgument(expression.isAbsolute() && particles.size() >= 2,
+                "The record path must be an absolute path below the root element: %s",
+                recordPath);
+        String[] names = new String[particles.size()];
+        for (int n = 0; n < names.length; ++n) {
+            checkArgument(particles.get(n) instanceof Name
+                    && ((Name) particles.get(n)).predicates().isEmpty(),
+                    "The record path must consist of element names: %s", recordPath);
+            names[n] = ((Name) particles.get(n)).name();
+        }
+        this.context = Arrays.copyOf(names, names.length - 1);
+        List<String> contextNames = Arrays.asList(context);
+        for (PathExpression handlerExpression : plan.automaton().expressions()) {
+            for (Particle particle : handlerExpression.particles()) {
+                checkArgument(!(particle instanceof Name)
+                        || ((Name) particle).predicates().isEmpty()
+                        || !contextNames.contains(particle.name()),
+                        "Attribute predicates are not supported on the elements that enclose "
+                                + "the records: %s", handlerExpression);
+            }
+        }
+        this.recordTag = ("<" + names[names.length - 1]).getBytes(StandardCharsets.UTF_8);
+        this.chunkSize = chunkSize;
+    }
+
+    public ParseSession parse(File file, ForkJoinPool pool) throws SAXException, IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long[] boundaries = boundaries(channel);
+            int chunks = boundaries.length - 1;
+            Object[] handlers = new Object[merges.size()];
+            for (int slot = 0; slot < handlers.length; ++slot) {
+                if (merges.get(slot) == null) {
+                    handlers[slot] = handlerFactory.apply(slot);
+                }
+            }
+            EndBatches batches = new EndBatches();
+            int window = 2 * pool.getParallelism();
+            Deque<ForkJoinTask<Chunk>> inFlight = new ArrayDeque<>();
+            int next = 0;
+            ParseOutcome outcome = ParseOutcome.COMPLETED;
+            try {
+                while (next < chunks || !inFlight.isEmpty()) {
+                    while (next < chunks && inFlight.size() < window) {
+                        int n = next++;
+                        inFlight.add(pool.submit(() -> parseChunk(channel, boundaries, n)));
+                    }
+                    Chunk chunk = await(inFlight.poll());
+                    chunk.log.replay(handlers, batches);
+                    merge(handlers, chunk.handlers);
+                }
+            } catch (StopParsing e) {
+                outcome = e.outcome();
+            } finally {
+                for (ForkJoinTask<Chunk> task : inFlight) {
+                    task.cancel(true);
+                }
+            }
+            batches.flush(handlers);
+            ParseSession result = new ParseSession(plan, handlers, Engine.NATIVE);
+            result.begin();
+            result.setOutcome(outcome);
+            return result;
+        }
+    }
+
+    private void merge(Object[] handlers, Object[] chunkHandlers) {
+        for (int slot = 0; slot < handlers.length; ++slot) {
+            BinaryOperator<Object> merge = merges.get(slot);
+            if (merge != null) {
+                handlers[slot] = handlers[slot] == null
+                        ? chunkHandlers[slot]
+                        : merge.apply(handlers[slot], chunkHandlers[slot]);
+            }
+        }
+    }
+
+    private Chunk parseChunk(FileChannel channel, long[] boundaries, int n)
+            throws SAXException, IOException {
+        Object[] handlers = new Object[merges.size()];
+        for (int slot = 0; slot < handlers.length; ++slot) {
+            if (merges.get(slot) != null) {
+                handlers[slot] = handlerFactory.apply(slot);
+            }
+        }
+        InvocationLog log = new InvocationLog();
+        ParseSession session = new ParseSession(plan, handlers, Engine.NATIVE);
+        session.recordInto(log);
+        session.begin();
+        long start = boundaries[n];
+        long end = boundaries[n + 1];
+        NativeTokenizer tokenizer = new NativeTokenizer(session, start);
+        if (n > 0) {
+            int[] ids = new int[context.length];
+            for (int i = 0; i < ids.length; ++i) {
+                ids[i] = session.names().intern(context[i]);
+            }
+            tokenizer.enter(ids);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_SIZE, end - start));
+        for (long position = start; position < end;) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new IOException("The file was truncated while being parsed");
+            }
+            buffer.flip();
+            tokenizer.feed(buffer);
+            position += count;
+        }
+        if (n == boundaries.length - 2) {
+            tokenizer.end();
+        } else {
+            tokenizer.endFragment(context.length);
+        }
+        session.flushBatches();
+        return new Chunk(handlers, log);
+    }
+
+    private long[] boundaries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long[] boundaries = new long[16];
+        int count = 1;
+        for (long from = chunkSize; from < size;) {
+            long boundary = nextBoundary(channel, from, size);
+            if (boundary < 0) {
+                break;
+            }
+            if (count + 1 == boundaries.length) {
+                boundaries = Arrays.copyOf(boundaries, 2 * count);
+            }
+            boundaries[count++] = boundary;
+            from = boundary + chunkSize;
+        }
+        boundaries[count++] = size;
+        return Arrays.copyOf(boundaries, count);
+    }
+
+    /**
+     * Returns the offset of the first record start tag at or after the given offset that follows
+     * the end of another tag, or -1 if there is none.
+     */
+    private long nextBoundary(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(READ_SIZE);
+        byte previous = 0;
+        long position = from;
+        while (position < size) {
+            window.clear();
+            int count = channel.read(window, position);
+            if (count < 0) {
+                return -1;
+            }
+            int i = 0;
+            for (; i < count; ++i) {
+                byte c = window.get(i);
+                if (c == '<') {
+                    if (i + recordTag.length >= count) {
+                        if (position + i + recordTag.length >= size) {
+                            return -1;
+                        }
+                        break;
+                    }
+                    if (previous == '>' && isRecordTag(window, i)) {
+                        return position + i;
+                    }
+                }
+                if (c != ' ' && c != '\n' && c != '\t' && c != '\r') {
+                    previous = c;
+                }
+            }
+            position += i;
+        }
+        return -1;
+    }
+
+    private boolean isRecordTag(ByteBuffer window, int start) {
+        for (int n = 1; n < recordTag.length; ++n) {
+            if (window.get(start + n) != recordTag[n]) {
+                return false;
+            }
+        }
+        byte next = window.get(start + recordTag.length);
+        return next == '>' || next == '/' || next == ' ' || next == '\n' || next == '\t'
+                || next == '\r';
+    }
+
+    private static Chunk await(ForkJoinTask<Chunk> task)
+            throws SAXException, IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing in parallel");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SAXException) {
+                throw (SAXException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ExhumeException(cause);
+        }
+    }
+
+    private static final class Chunk {
+        private final Object[] handlers;
+        private final InvocationLog log;
+
+        public Chunk(Object[] handlers, InvocationLog log) {
+            this.handlers = handlers;
+            this.log = log;
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package tzeth.exhume.sax;
+
+/**
+ * What the parse should do after a handler method. {@link ElementStart} and {@link ElementEnd}
+ * methods may return a ParseAction instead of void; a method that returns {@link #STOP} ends the
+ * parse, for example once the header of a large document has been read:
+ *
+ * <pre>
+ * &#64;ElementEnd("/Report/Header/Id")
+ * ParseAction reportId(String id) {
+ *     this.reportId = id;
+ *     return ParseAction.STOP;
+ * }
+ * </pre>
+ */
+public enum ParseAction {
+    CONTINUE,
+    /**
+     * Ends the parse without reading the rest of the input. No handler method is called for the
+     * elements that follow, batched methods get their last batch, and the parse returns normally
+     * with the outcome {@link ParseOutcome#STOPPED}.
+     */
+    STOP
+}
@@ -0,0 +1,103 @@
+package tzeth.exhume.sax;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.nio.ByteBuffer;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Parses a UTF-8 document that arrives in chunks, such as from a non-blocking channel, without a
+ * thread of its own.
+ * <p>
+ * Every call to {@link #feed(ByteBuffer)} tokenizes the bytes it is given and runs the handlers
+ * for the elements that complete in them, on the calling thread, and returns. A token cut off at
+ * the end of a chunk is kept until the next one completes it. A feeder holds no thread between
+ * calls, so any number of documents can be parsed by a few threads, each document fed by one
+ * thread at a time:
+ *
+ * <pre>
+ * ParseFeeder feeder = parser.newFeeder();
+ * ...
+ * // whenever bytes have been read from the channel
+ * buffer.flip();
+ * feeder.feed(buffer);
+ * buffer.clear();
+ * ...
+ * // when the channel reaches end-of-stream
+ * ParseOutcome outcome = feeder.endOfInput();
+ * </pre>
+ *
+ * If a handler stops the parse, or it is cancelled or times out, the rest of the input is
+ * ignored; {@link #isStopped()} tells the feeding code that it can stop reading.
+ */
+public final class ParseFeeder {
+    private final ParseSession session;
+    private final NativeTokenizer tokenizer;
+    private boolean stopped;
+    private boolean ended;
+
+    ParseFeeder(ParseSession session) {
+        this.session = session;
+        this.tokenizer = new NativeTokenizer(session);
+    }
+
+    /**
+     * Returns the session of the parse, with the handler objects.
+     */
+    public ParseSession session() {
+        return session;
+    }
+
+    /**
+     * Parses the remaining bytes of the given buffer. Its position is moved to its limit.
+     *
+     * @throws SAXException if the bytes are not well-formed XML
+     */
+    public void feed(ByteBuffer input) throws SAXException {
+        checkState(!ended, "The end of the input has already been reached");
+        if (stopped) {
+            input.position(input.limit());
+            return;
+        }
+        try {
+            tokenizer.feed(input);
+        } catch (StopParsing e) {
+            stop(e);
+            input.position(input.limit());
+        }
+    }
+
+    /**
+     * Signals the end of the input, checks that the document is complete, and hands the last
+     * batches to batched end methods. Returns how the parse ended.
+     */
+    public ParseOutcome endOfInput() throws SAXException {
+        checkState(!ended, "The end of the input has already been reached");
+        ended = true;
+        if (!stopped) {
+            try {
+                tokenizer.end();
+            } catch (StopParsing e) {
+                stop(e);
+            }
+        }
+        session.flushBatches();
+        return session.outcome();
+    }
+
+    /**
+     * Returns true if the parse has ended before the end of the input, so that the rest of the
+     * input need not be fed.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    private void stop(StopParsing e) {
+        stopped = true;
+        session.setOutcome(e.outcome());
+        session.flushBatches();
+    }
+
+}
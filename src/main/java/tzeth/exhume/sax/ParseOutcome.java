@@ -0,0 +1,15 @@
+package tzeth.exhume.sax;
+
+/**
+ * How a parse ended, when it did not fail.
+ */
+public enum ParseOutcome {
+    /** The whole document was parsed. */
+    COMPLETED,
+    /** A handler method returned {@link ParseAction#STOP}. */
+    STOPPED,
+    /** The parse was cancelled from another thread. */
+    CANCELLED,
+    /** The parse took longer than its time limit. */
+    TIMED_OUT
+}
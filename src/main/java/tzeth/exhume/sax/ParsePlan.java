@@ -0,0 +1,218 @@
+package tzeth.exhume.sax;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MultimapBuilder;
+
+/**
+ * The handler methods of a set of handler classes, compiled into a single automaton with the
+ * bindings to invoke looked up by automaton state.
+ * <p>
+ * A plan is immutable once built, and can be shared by any number of concurrent
+ * {@link ParseSession sessions}. Bindings refer to handlers by slot; each session supplies its
+ * own handler objects for the slots.
+ */
+final class ParsePlan {
+    private final ImmutableList<Class<?>> handlerTypes;
+    private final PathAutomaton automaton;
+    private final StartBinding[][] startBindings;
+    private final EndBinding[][] endBindings;
+    private final boolean[] collectsText;
+
+    private ParsePlan(Builder builder) {
+        this.handlerTypes = ImmutableList.copyOf(builder.handlerTypes);
+        Set<PathExpression> expressions = new LinkedHashSet<>(builder.starts.keySet());
+        expressions.addAll(builder.ends.keySet());
+        expressions.addAll(builder.framingStarts.keySet());
+        expressions.addAll(builder.framingEnds.keySet());
+        this.automaton = PathAutomaton.compile(new ArrayList<>(expressions));
+        this.startBindings = new StartBinding[automaton.stateCount()][];
+        this.endBindings = new EndBinding[automaton.stateCount()][];
+        this.collectsText = new boolean[automaton.stateCount()];
+        for (int id = 0; id < automaton.stateCount(); ++id) {
+            List<StartBinding> startsForState = new ArrayList<>();
+            List<EndBinding> endsForState = new ArrayList<>();
+            for (int e : automaton.state(id).accepted()) {
+                startsForState.addAll(builder.framingStarts.get(automaton.expressions().get(e)));
+            }
+            for (int e : automaton.state(id).accepted()) {
+                PathExpression expression = automaton.expressions().get(e);
+                startsForState.addAll(builder.starts.get(expression));
+                endsForState.addAll(builder.ends.get(expression));
+            }
+            for (int e : automaton.state(id).accepted()) {
+                endsForState.addAll(builder.framingEnds.get(automaton.expressions().get(e)));
+            }
+            startBindings[id] = startsForState.toArray(new StartBinding[0]);
+            endBindings[id] = endsForState.toArray(new EndBinding[0]);
+            collectsText[id] = !endsForState.isEmpty();
+        }
+    }
+
+    public ImmutableList<Class<?>> handlerTypes() {
+        return handlerTypes;
+    }
+
+    public PathAutomaton automaton() {
+        return automaton;
+    }
+
+    public StartBinding[] startBindings(PathAutomaton.State state) {
+        return startBindings[state.id()];
+    }
+
+    public EndBinding[] endBindings(PathAutomaton.State state) {
+        return endBindings[state.id()];
+    }
+
+    public boolean collectsText(PathAutomaton.State state) {
+        return collectsText[state.id()];
+    }
+
+    public static final class Builder {
+        private final List<Class<?>> handlerTypes = new ArrayList<>();
+        private final ListMultimap<PathExpression, StartBinding> starts = MultimapBuilder
+                .linkedHashKeys().arrayListValues().build();
+        private final ListMultimap<PathExpression, EndBinding> ends = MultimapBuilder
+                .linkedHashKeys().arrayListValues().build();
+        private final ListMultimap<PathExpression, StartBinding> framingStarts = MultimapBuilder
+                .linkedHashKeys().arrayListValues().build();
+        private final ListMultimap<PathExpression, EndBinding> framingEnds = MultimapBuilder
+                .linkedHashKeys().arrayListValues().build();
+        private final ValueConverters converters;
+        private int batchCount;
+
+        public Builder() {
+            this(new ValueConverters());
+        }
+
+        /**
+         * Creates a builder that shares the given converters, including those registered later.
+         */
+        Builder(ValueConverters converters) {
+            this.converters = converters;
+        }
+
+        /**
+         * Registers a converter for the handlers added after this call.
+         */
+        public <T> void registerConverter(Class<T> type, ValueConverter<? extends T> converter) {
+            converters.register(type, converter);
+        }
+
+        /**
+         * Adds the handler methods of the given class, and returns the slot of the handler.
+         */
+        public int addHandler(Class<?> type) {
+            return addHandler(type, HandlerDispatchers.of(type), starts, ends);
+        }
+
+        /**
+         * Adds a handler with the given bindings, and returns the slot of the handler.
+         */
+        public int addHandler(Class<?> type, HandlerDispatcher dispatcher) {
+            return addHandler(type, dispatcher, starts, ends);
+        }
+
+        /**
+         * Returns the converters registered so far.
+         */
+        ValueConverters converters() {
+            return converters;
+        }
+
+        /**
+         * Adds a handler whose start methods run before, and whose end methods run after, those of
+         * all other handlers for the same element. Returns the slot of the handler.
+         */
+        public int addFramingHandler(Class<?> type, HandlerDispatcher dispatcher) {
+            return addHandler(type, dispatcher, framingStarts, framingEnds);
+        }
+
+        private int addHandler(Class<?> type, HandlerDispatcher dispatcher,
+                ListMultimap<PathExpression, StartBinding> starts,
+                ListMultimap<PathExpression, EndBinding> ends) {
+            int slot = handlerTypes.size();
+            ListMultimap<PathExpression, StartBinding> newStarts = MultimapBuilder
+                    .linkedHashKeys().arrayListValues().build();
+            ListMultimap<PathExpression, EndBinding> newEnds = MultimapBuilder
+                    .linkedHashKeys().arrayListValues().build();
+            dispatcher.bind(new HandlerBindings() {
+                @Override
+                public void onStart(String expression, StartInvoker invoker) {
+                    newStarts.put(PathExpression.of(expression), new StartBinding(slot, invoker));
+                }
+
+                @Override
+                public void onStartControlling(String expression,
+                        StartInvoker.Controlling invoker) {
+                    onStart(expression,
+                            (h, soe) -> StopParsing.perform(invoker.invoke(h, soe)));
+                }
+
+                @Override
+                public void onEnd(String expression, Class<?> valueType, EndInvoker invoker) {
+                    newEnds.put(PathExpression.of(expression),
+                            new EndBinding(slot, converters.factory(valueType), invoker));
+                }
+
+                @Override
+                public void onEndControlling(String expression, Class<?> valueType,
+                        EndInvoker.Controlling invoker) {
+                    onEnd(expression, valueType,
+                            (h, v) -> StopParsing.perform(invoker.invoke(h, v)));
+                }
+
+                @Override
+                public void onEndInt(String expression, EndInvoker.OfInt invoker) {
+                    newEnds.put(PathExpression.of(expression), EndBinding.ofInt(slot, invoker));
+                }
+
+                @Override
+                public void onEndLong(String expression, EndInvoker.OfLong invoker) {
+                    newEnds.put(PathExpression.of(expression), EndBinding.ofLong(slot, invoker));
+                }
+
+                @Override
+                public void onEndDouble(String expression, EndInvoker.OfDouble invoker) {
+                    newEnds.put(PathExpression.of(expression),
+                            EndBinding.ofDouble(slot, invoker));
+                }
+
+                @Override
+                public void onEndFloat(String expression, EndInvoker.OfFloat invoker) {
+                    newEnds.put(PathExpression.of(expression),
+                            EndBinding.ofFloat(slot, invoker));
+                }
+
+                @Override
+                public void onEndBoolean(String expression, EndInvoker.OfBoolean invoker) {
+                    newEnds.put(PathExpression.of(expression),
+                            EndBinding.ofBoolean(slot, invoker));
+                }
+
+                @Override
+                public void onEndBatch(String expression, Class<?> batchType,
+                        Class<?> valueType, int batchSize, EndInvoker invoker) {
+                    newEnds.put(PathExpression.of(expression), EndBinding.batched(slot,
+                            batchType, valueType, converters.factory(valueType), batchSize,
+                            batchCount++, invoker));
+                }
+            });
+            handlerTypes.add(type);
+            starts.putAll(newStarts);
+            ends.putAll(newEnds);
+            return slot;
+        }
+
+        public ParsePlan build() {
+            return new ParsePlan(this);
+        }
+    }
+
+}
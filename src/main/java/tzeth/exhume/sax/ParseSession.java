@@ -0,0 +1,483 @@
+package tzeth.exhume.sax;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import tzeth.exhume.ExhumeException;
+
+/**
+ * The state of a single parse: the handler objects, and where in the document the parse is.
+ * <p>
+ * A session is created for every parse, is used by one thread at a time, and cannot be reused.
+ */
+public final class ParseSession {
+    /** Cancellation and the time limit are checked once every 256 elements. */
+    private static final int CHECK_INTERVAL_MASK = 255;
+
+    private final ParsePlan plan;
+    private final Object[] handlers;
+    /** The handlers that are invoked directly; invocations for empty slots go to the sink. */
+    private Object[] targets;
+    private final Engine engine;
+    private final ElementNames names;
+    private final PathTracker path;
+    private PathAutomaton.State[] states = new PathAutomaton.State[16];
+    private final TextBuffer text = new TextBuffer();
+    private final ValueCache values = new ValueCache();
+    private final EndBatches batches = new EndBatches();
+    private int[] textMarks = new int[16];
+    /** The number of open elements inside an element none of whose descendants can match. */
+    private int skipDepth;
+    private boolean used;
+    @Nullable
+    private InvocationSink sink;
+    @Nullable
+    private volatile HandlerExecution execution;
+    private volatile boolean cancelled;
+    private long timeLimitNanos;
+    private long deadline;
+    private int elementCount;
+    private volatile ParseOutcome outcome = ParseOutcome.COMPLETED;
+
+    ParseSession(ParsePlan plan, Object[] handlers, Engine engine) {
+        checkArgument(handlers.length == plan.handlerTypes().size());
+        this.plan = plan;
+        this.handlers = handlers;
+        this.targets = handlers;
+        this.engine = checkNotNull(engine);
+        this.names = plan.automaton().names().copy();
+        this.path = new PathTracker(names);
+    }
+
+    /**
+     * Returns the handler object of the given type used by this session.
+     */
+    public <T> T handler(Class<T> type) {
+        for (Object h : handlers) {
+            if (type.isInstance(h)) {
+                return type.cast(h);
+            }
+        }
+        throw new IllegalArgumentException("No handler of type " + type.getName());
+    }
+
+    public void parseXml(String xml) throws SAXException {
+        try {
+            parse(() -> {
+                switch (engine) {
+                case SAX:
+                    SaxParsers.parseXml(xml, new SaxHandler());
+                    break;
+                case STAX:
+                    StaxEngine.parseXml(xml, this);
+                    break;
+                case NATIVE:
+                    NativeEngine.parseXml(xml, this);
+                    break;
+                }
+            });
+        } catch (IOException e) {
+            throw new ExhumeException(e);
+        }
+    }
+
+    public void parseFile(File file) throws SAXException, IOException {
+        parse(() -> {
+            switch (engine) {
+            case SAX:
+                SaxParsers.parseFile(file, new SaxHandler());
+                break;
+            case STAX:
+                StaxEngine.parseFile(file, this);
+                break;
+            case NATIVE:
+                NativeEngine.parseFile(file, this);
+                break;
+            }
+        });
+    }
+
+    public void parseStream(InputStream stream) throws SAXException, IOException {
+        parse(() -> {
+            switch (engine) {
+            case SAX:
+                SaxParsers.parseStream(stream, new SaxHandler());
+                break;
+            case STAX:
+                StaxEngine.parseStream(stream, this);
+                break;
+            case NATIVE:
+                NativeEngine.parseStream(stream, this);
+                break;
+            }
+        });
+    }
+
+    /**
+     * Parses a file by memory-mapping it in chunks, instead of reading it through a stream. Each
+     * chunk is unmapped as soon as it has been parsed.
+     */
+    public void parseMappedFile(File file) throws SAXException, IOException {
+        try (MappedFileInput input = new MappedFileInput(file)) {
+            parseMapped(input);
+        }
+    }
+
+    void parseMapped(MappedFileInput input) throws SAXException, IOException {
+        parse(() -> {
+            switch (engine) {
+            case SAX:
+                SaxParsers.parseStream(input, new SaxHandler());
+                break;
+            case STAX:
+                StaxEngine.parseStream(input, this);
+                break;
+            case NATIVE:
+                NativeEngine.parseMapped(input, this);
+                break;
+            }
+        });
+    }
+
+    /**
+     * Parses the remaining bytes of the given buffer.
+     */
+    public void parseBuffer(ByteBuffer buffer) throws SAXException, IOException {
+        parse(() -> {
+            switch (engine) {
+            case SAX:
+                SaxParsers.parseStream(new ByteBufferInputStream(buffer), new SaxHandler());
+                break;
+            case STAX:
+                StaxEngine.parseStream(new ByteBufferInputStream(buffer), this);
+                break;
+            case NATIVE:
+                NativeEngine.parseBuffer(buffer, this);
+                break;
+            }
+        });
+    }
+
+    /**
+     * Returns a feeder that parses the document from chunks of bytes, as they are pushed to it,
+     * with the {@link Engine#NATIVE native} engine whatever the engine of the session. The handlers
+     * must run on the thread that feeds, so the session cannot be pipelined or grouped.
+     */
+    public ParseFeeder feeder() {
+        checkState(execution == null,
+                "A session that runs its handlers on other threads cannot be fed");
+        start();
+        return new ParseFeeder(this);
+    }
+
+    private void start() {
+        begin();
+        if (timeLimitNanos > 0) {
+            deadline = System.nanoTime() + timeLimitNanos;
+        }
+    }
+
+    private void parse(HandlerExecution.Parse parse) throws SAXException, IOException {
+        start();
+        // A stop on the parsing thread still hands the events so far to the execution; a stop
+        // in a handler on another thread comes back from the execution
+        HandlerExecution.Parse parseAndFlush = () -> {
+            try {
+                checkLimits();
+                parse.run();
+            } catch (StopParsing e) {
+                outcome = e.outcome();
+            }
+            flushBatches();
+        };
+        try {
+            if (execution != null) {
+                execution.run(parseAndFlush);
+            } else {
+                parseAndFlush.run();
+            }
+        } catch (StopParsing e) {
+            outcome = e.outcome();
+        }
+    }
+
+    /**
+     * Returns how the parse ended. A parse that fails throws instead.
+     */
+    public ParseOutcome outcome() {
+        return outcome;
+    }
+
+    void setOutcome(ParseOutcome outcome) {
+        this.outcome = checkNotNull(outcome);
+    }
+
+    /**
+     * Ends the parse as soon as possible, with the outcome {@link ParseOutcome#CANCELLED}. Can be
+     * called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Ends the parse with the outcome {@link ParseOutcome#TIMED_OUT} if it takes longer than the
+     * given time.
+     */
+    void timeLimit(Duration limit) {
+        checkArgument(!limit.isNegative() && !limit.isZero(), "The time limit must be positive");
+        this.timeLimitNanos = limit.toNanos();
+    }
+
+    /**
+     * Hands the last, partial, batches to the batched end methods of the handlers that are invoked
+     * directly.
+     */
+    void flushBatches() {
+        batches.flush(targets);
+    }
+
+    void begin() {
+        checkState(!used, "A parse session can only be used once");
+        used = true;
+    }
+
+    /**
+     * Makes the session record, instead of run, the invocations of handlers in slots that have no
+     * handler object.
+     */
+    void recordInto(InvocationSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Makes the session run the handlers on a dispatch thread, while parsing continues on the
+     * calling thread.
+     */
+    void pipelined() {
+        executeHandlers(new Pipeline(handlers, "exhume-dispatch"), new Object[handlers.length]);
+    }
+
+    /**
+     * Makes the session run the grouped handlers each group on a thread of its own.
+     */
+    void grouped(List<String> groups) {
+        HandlerGroups execution = new HandlerGroups(handlers, groups);
+        executeHandlers(execution, execution.ungrouped(handlers));
+    }
+
+    /**
+     * Returns the number of events the given handler group has yet to handle. Can be called from
+     * any thread while the parse is running.
+     */
+    public long groupLag(String group) {
+        HandlerExecution e = execution;
+        if (!(e instanceof HandlerGroups)) {
+            throw new IllegalArgumentException("No handler group named " + group);
+        }
+        return ((HandlerGroups) e).lag(group);
+    }
+
+    /**
+     * Makes the session hand the invocations of handlers in slots that have no handler object to
+     * the given execution, which also runs the parse.
+     */
+    void executeHandlers(HandlerExecution execution) {
+        executeHandlers(execution, handlers);
+    }
+
+    /**
+     * Like {@link #executeHandlers(HandlerExecution)}, with the given handlers invoked directly.
+     */
+    void executeHandlers(HandlerExecution execution, Object[] targets) {
+        checkState(!used, "The session has already been used");
+        checkArgument(targets.length == handlers.length);
+        this.execution = execution;
+        this.sink = execution;
+        this.targets = targets;
+    }
+
+    ElementNames names() {
+        return names;
+    }
+
+    TextBuffer text() {
+        return text;
+    }
+
+    void startElement(String uri, String localName, int nameId, Attributes attributes) {
+        if ((++elementCount & CHECK_INTERVAL_MASK) == 0) {
+            checkLimits();
+        }
+        PathAutomaton.State state = pushState(nameId, attributes);
+        invokeStartBindings(state, uri, localName, nameId, attributes);
+    }
+
+    /**
+     * Returns true if no expression can match an element that starts now, because no descendant of
+     * the current element can be matched. The engine then reports the element with
+     * {@link #skippedStart()}, without looking at its name or attributes, and its end with
+     * {@link #endElement(String, String)} as usual.
+     */
+    boolean skipsChildren() {
+        int depth = path.depth();
+        return skipDepth > 0
+                || (depth == 0 ? plan.automaton().initial() : states[depth - 1]).isDead();
+    }
+
+    /**
+     * Starts an element in a subtree that is skipped. Only the nesting depth is tracked until the
+     * subtree ends.
+     */
+    void skippedStart() {
+        if ((++elementCount & CHECK_INTERVAL_MASK) == 0) {
+            checkLimits();
+        }
+        ++skipDepth;
+    }
+
+    private void checkLimits() {
+        if (cancelled) {
+            throw StopParsing.CANCELLED;
+        }
+        if (timeLimitNanos > 0 && System.nanoTime() - deadline > 0) {
+            throw StopParsing.TIMED_OUT;
+        }
+    }
+
+    /**
+     * Enters an element without reporting its start, for a parse that begins inside it. The
+     * element has no attributes as far as attribute predicates are concerned.
+     */
+    void enter(int nameId) {
+        pushState(nameId, null);
+    }
+
+    private PathAutomaton.State pushState(int nameId, @Nullable Attributes attributes) {
+        int depth = path.depth();
+        PathAutomaton.State parent = depth == 0
+                ? plan.automaton().initial()
+                : states[depth - 1];
+        PathAutomaton.State state = attributes == null
+                ? parent.next(nameId)
+                : parent.next(nameId, attributes);
+        if (depth == states.length) {
+            states = Arrays.copyOf(states, 2 * depth);
+            textMarks = Arrays.copyOf(textMarks, 2 * depth);
+        }
+        states[depth] = state;
+        textMarks[depth] = plan.collectsText(state) ? text.length() : -1;
+        path.push(nameId);
+        return state;
+    }
+
+    private void invokeStartBindings(PathAutomaton.State state, String uri, String localName,
+            int nameId, Attributes attributes) {
+        StartBinding[] matching = plan.startBindings(state);
+        if (matching.length == 0) {
+            return;
+        }
+        StartOfElement soe = new StartOfElement(uri, localName, names.name(nameId), attributes,
+                path);
+        for (StartBinding binding : matching) {
+            Object handler = targets[binding.slot()];
+            if (handler != null) {
+                binding.invoke(handler, soe);
+            } else {
+                sink.start(binding, soe);
+            }
+        }
+    }
+
+    void endElement(String uri, String localName) {
+        // TODO: Distinguish between null and empty values. Must look at the "xsi:nil"
+        // attribute
+        // in the start element.
+        if (skipDepth > 0) {
+            --skipDepth;
+            return;
+        }
+        int depth = path.depth();
+        int textMark = textMarks[depth - 1];
+        if (textMark >= 0) {
+            String qName = names.name(path.idAt(depth - 1));
+            invokeEndBindings(states[depth - 1], uri, localName, qName, textMark);
+            text.truncate(textMark);
+        }
+        path.pop();
+    }
+
+    private void invokeEndBindings(PathAutomaton.State state, String uri, String localName,
+            String qName, int textMark) {
+        EndOfElement eoe = new EndOfElement(uri, localName, qName, text.chars(), textMark,
+                text.length() - textMark, values, path);
+        for (EndBinding binding : plan.endBindings(state)) {
+            Object handler = targets[binding.slot()];
+            if (handler == null) {
+                if (binding.isPrimitive()) {
+                    sink.endPrimitive(binding, binding.primitiveValue(eoe));
+                } else {
+                    sink.end(binding, binding.value(eoe));
+                }
+            } else if (binding.isBatched()) {
+                batches.addValueOf(binding, handler, eoe);
+            } else {
+                binding.invoke(handler, eoe);
+            }
+        }
+    }
+
+    void characters(char[] ch, int start, int length) {
+        if (collectsText()) {
+            text.append(ch, start, length);
+        }
+    }
+
+    /**
+     * Returns true if the text of the current element is collected.
+     */
+    boolean collectsText() {
+        int depth = path.depth();
+        return skipDepth == 0 && depth > 0 && textMarks[depth - 1] >= 0;
+    }
+
+    private class SaxHandler extends DefaultHandler {
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                Attributes attributes) throws SAXException {
+            if (skipsChildren()) {
+                skippedStart();
+            } else {
+                ParseSession.this.startElement(uri, localName, names.intern(qName), attributes);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName)
+                throws SAXException {
+            ParseSession.this.endElement(uri, localName);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            ParseSession.this.characters(ch, start, length);
+        }
+    }
+
+}
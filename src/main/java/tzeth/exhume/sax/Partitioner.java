@@ -0,0 +1,157 @@
+package tzeth.exhume.sax;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.BinaryOperator;
+import java.util.function.IntFunction;
+
+import javax.annotation.Nullable;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Runs the handlers of a session on a number of worker threads, routing whole records to workers
+ * by a key inside the record.
+ * <p>
+ * The invocations for a record are collected on the parsing thread until the record ends, and are
+ * then handed to the worker chosen by the hash of the key, so all records with the same key are
+ * handled by the same worker, in document order. Invocations outside records go to the first
+ * worker. Every worker has its own handler objects, and when the parse is done they are merged,
+ * in worker order, into the handler slots of the session.
+ * <p>
+ * The partitioner takes a slot of its own in the plan, as a
+ * {@link ParsePlan.Builder#addFramingHandler framing handler}, so that it sees the start of a
+ * record before, and the end after, any other handler.
+ */
+final class Partitioner implements HandlerExecution {
+    private final Object[] handlers;
+    private final List<BinaryOperator<Object>> merges;
+    private final Pipeline[] workers;
+    private final Object[][] workerHandlers;
+    private final InvocationLog record = new InvocationLog();
+    private int recordDepth;
+    @Nullable
+    private String key;
+
+    /**
+     * Returns the bindings of the partitioner for the given key path, whose parent is the record.
+     */
+    public static HandlerDispatcher dispatcher(String keyPath) {
+        int separator = keyPath.lastIndexOf(Path.SEPARATOR);
+        checkArgument(separator > 0 && separator < keyPath.length() - 1,
+                "The key path must name the record element and the key element in it: %s",
+                keyPath);
+        String recordPath = keyPath.substring(0, separator);
+        return bindings -> {
+            bindings.onStart(recordPath, (h, soe) -> ((Partitioner) h).recordStart());
+            bindings.onEnd(keyPath, String.class, (h, value) -> ((Partitioner) h).key(value));
+            bindings.onEnd(recordPath, EndOfElement.class,
+                    (h, value) -> ((Partitioner) h).recordEnd());
+        };
+    }
+
+    /**
+     * @param handlers the handler slots of the session, where the partitioner is the only object
+     *            during the parse, and the merged handlers are put when it is done
+     * @param factory creates a handler object for a slot
+     */
+    public Partitioner(Object[] handlers, int workerCount, IntFunction<Object> factory,
+            List<BinaryOperator<Object>> merges) {
+        checkArgument(workerCount > 0, "There must be at least one worker");
+        this.handlers = handlers;
+        this.merges = merges;
+        this.workers = new Pipeline[workerCount];
+        this.workerHandlers = new Object[workerCount][];
+        for (int w = 0; w < workerCount; ++w) {
+            workerHandlers[w] = new Object[handlers.length];
+            for (int slot = 0; slot < merges.size(); ++slot) {
+                workerHandlers[w][slot] = factory.apply(slot);
+            }
+            workers[w] = new Pipeline(workerHandlers[w], "exhume-worker-" + w);
+        }
+    }
+
+    @Override
+    public void run(Parse parse) throws SAXException, IOException {
+        for (Pipeline worker : workers) {
+            worker.start();
+        }
+        boolean completed = false;
+        StopParsing stop = null;
+        try {
+            parse.run();
+            completed = true;
+        } finally {
+            try {
+                Pipeline.finishAll(workers, completed);
+            } catch (StopParsing e) {
+                // The handlers of a stopped parse are merged all the same
+                stop = e;
+            }
+        }
+        merge();
+        if (stop != null) {
+            throw stop;
+        }
+    }
+
+    private void merge() {
+        for (int slot = 0; slot < merges.size(); ++slot) {
+            Object merged = workerHandlers[0][slot];
+            for (int w = 1; w < workers.length; ++w) {
+                merged = merges.get(slot).apply(merged, workerHandlers[w][slot]);
+            }
+            handlers[slot] = merged;
+        }
+    }
+
+    @Override
+    public void start(StartBinding binding, StartOfElement soe) {
+        if (recordDepth > 0) {
+            record.start(binding, soe);
+        } else {
+            workers[0].start(binding, soe);
+        }
+    }
+
+    @Override
+    public void end(EndBinding binding, Object value) {
+        if (recordDepth > 0) {
+            record.end(binding, value);
+        } else {
+            workers[0].end(binding, value);
+        }
+    }
+
+    @Override
+    public void endPrimitive(EndBinding binding, long value) {
+        if (recordDepth > 0) {
+            record.endPrimitive(binding, value);
+        } else {
+            workers[0].endPrimitive(binding, value);
+        }
+    }
+
+    private void recordStart() {
+        if (recordDepth++ == 0) {
+            key = null;
+        }
+    }
+
+    private void key(Object value) {
+        if (recordDepth > 0 && key == null) {
+            key = (String) value;
+        }
+    }
+
+    private void recordEnd() {
+        if (--recordDepth == 0) {
+            int w = key == null ? 0 : Math.floorMod(key.hashCode(), workers.length);
+            workers[w].append(record);
+            record.clear();
+        }
+    }
+
+}
@@ -17,6 +17,10 @@ final class Path {
         return new Path(s);
     }
 
+    static Path fromParticles(String[] particles) {
+        return new Path(ImmutableList.copyOf(particles));
+    }
+
     public Path(String s) {
         checkArgument(s.startsWith(SEPARATOR));
         checkArgument(!s.endsWith(SEPARATOR));
@@ -27,6 +31,10 @@ final class Path {
         this.particles = ImmutableList.copyOf(parts);
     }
 
+    private Path(ImmutableList<String> particles) {
+        this.particles = particles;
+    }
+
     public ImmutableList<String> getParticles() {
         return particles;
     }
@@ -0,0 +1,340 @@
+package tzeth.exhume.sax;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.xml.sax.Attributes;
+
+import com.google.common.collect.ImmutableList;
+
+import tzeth.exhume.sax.PathExpression.AttributePredicate;
+import tzeth.exhume.sax.PathExpression.MultiLevelWildcard;
+import tzeth.exhume.sax.PathExpression.Name;
+import tzeth.exhume.sax.PathExpression.OneLevelWildcard;
+import tzeth.exhume.sax.PathExpression.Particle;
+
+/**
+ * A deterministic automaton over element names, compiled from a set of path expressions.
+ * <p>
+ * Walking the automaton one state per element start gives, for every element in a document, the
+ * set of expressions that match the path of that element. Absolute expressions form a trie from
+ * the document root, relative expressions are matched as suffixes of the path. A {@code *} matches
+ * any one element, and a {@code **} any number of elements, including none.
+ * <p>
+ * Since the automaton is deterministic, matching takes a single transition per element, however
+ * many expressions and wildcards there are; nothing is ever backtracked. Attribute predicates make
+ * a transition depend on the attributes of the element as well: such a transition has a target
+ * state for every combination of its predicates, and they are tested when the element starts.
+ */
+final class PathAutomaton {
+    /** The most distinct predicates a single transition can depend on. */
+    private static final int MAX_CONDITIONS = 8;
+
+    private final ImmutableList<PathExpression> expressions;
+    private final ElementNames names = new ElementNames();
+    private final ImmutableList<State> states;
+
+    public static PathAutomaton compile(List<PathExpression> expressions) {
+        return new PathAutomaton(expressions);
+    }
+
+    private PathAutomaton(List<PathExpression> expressions) {
+        this.expressions = ImmutableList.copyOf(expressions);
+        this.states = new Compiler(this.expressions, this.names).compile();
+    }
+
+    public ImmutableList<PathExpression> expressions() {
+        return expressions;
+    }
+
+    /**
+     * Returns the names used by the expressions. Their ids are the symbols of the automaton; any
+     * name interned after them moves to the same state as any other unknown name.
+     */
+    public ElementNames names() {
+        return names;
+    }
+
+    public State initial() {
+        return states.get(0);
+    }
+
+    public State next(State state, String name) {
+        int symbol = names.find(name);
+        return symbol < 0 ? state.otherwise : state.next(symbol);
+    }
+
+    public int stateCount() {
+        return states.size();
+    }
+
+    public State state(int id) {
+        return states.get(id);
+    }
+
+    public static final class State {
+        private final int id;
+        private final int[] accepted;
+        private final boolean dead;
+        private State[] transitions = new State[0];
+        /** The transitions that depend on attributes, by symbol, or null if there are none. */
+        @Nullable
+        private Guard[] guards;
+        private State otherwise = this;
+
+        private State(int id, int[] accepted, boolean dead) {
+            this.id = id;
+            this.accepted = accepted;
+            this.dead = dead;
+        }
+
+        public int id() {
+            return id;
+        }
+
+        /**
+         * Returns the indexes of the expressions that match the element that led to this state.
+         */
+        public int[] accepted() {
+            return accepted;
+        }
+
+        /**
+         * Returns true if no descendant of the element that led to this state can be matched.
+         */
+        public boolean isDead() {
+            return dead;
+        }
+
+        /**
+         * Returns the next state for an element with the given name and no attributes.
+         */
+        public State next(int symbol) {
+            return symbol < transitions.length ? transitions[symbol] : otherwise;
+        }
+
+        /**
+         * Returns the next state for an element with the given name and attributes.
+         */
+        public State next(int symbol, Attributes attributes) {
+            Guard guard = guards != null && symbol < guards.length ? guards[symbol] : null;
+            return guard != null ? guard.next(attributes) : next(symbol);
+        }
+    }
+
+    /**
+     * A transition that depends on attributes: the predicates of a particle are a condition, and
+     * the target is looked up by the conditions that hold.
+     */
+    private static final class Guard {
+        private final AttributePredicate[][] conditions;
+        private final State[] targets;
+
+        public Guard(AttributePredicate[][] conditions, State[] targets) {
+            this.conditions = conditions;
+            this.targets = targets;
+        }
+
+        public State next(Attributes attributes) {
+            int holding = 0;
+            for (int c = 0; c < conditions.length; ++c) {
+                if (holds(conditions[c], attributes)) {
+                    holding |= 1 << c;
+                }
+            }
+            return targets[holding];
+        }
+
+        private static boolean holds(AttributePredicate[] condition, Attributes attributes) {
+            for (AttributePredicate predicate : condition) {
+                if (!predicate.test(attributes)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Subset construction over a non-deterministic automaton with one position per particle of
+     * each expression, plus a final position per expression.
+     * <p>
+     * A position moves to the next one on its name, or on any name for a {@code *}. A looping
+     * position also stays where it is on any name; that is the first position of a relative
+     * expression, and the position of a {@code **}, which the automaton can also pass without
+     * reading a name. A position of a name with attribute predicates moves on only if they hold.
+     */
+    private static final class Compiler {
+        private final List<PathExpression> expressions;
+        private final List<String> names = new ArrayList<>();
+        private final List<Boolean> loops = new ArrayList<>();
+        private final List<Boolean> anyName = new ArrayList<>();
+        private final List<Boolean> skippable = new ArrayList<>();
+        private final List<ImmutableList<AttributePredicate>> predicates = new ArrayList<>();
+        private final List<Integer> acceptedExpressions = new ArrayList<>();
+        private final BitSet starts = new BitSet();
+        private final ElementNames alphabet;
+        private final Map<BitSet, State> statesByPositions = new HashMap<>();
+        private final List<State> states = new ArrayList<>();
+        private final List<BitSet> positionsOfState = new ArrayList<>();
+
+        public Compiler(List<PathExpression> expressions, ElementNames alphabet) {
+            this.expressions = expressions;
+            this.alphabet = alphabet;
+        }
+
+        public ImmutableList<State> compile() {
+            for (int e = 0; e < expressions.size(); ++e) {
+                addPositions(e, expressions.get(e));
+            }
+            Deque<State> work = new ArrayDeque<>();
+            work.add(stateFor(closure(starts)));
+            while (!work.isEmpty()) {
+                State state = work.poll();
+                BitSet positions = positionsOfState.get(state.id);
+                int knownStates = states.size();
+                state.otherwise = stateFor(closure(move(positions, null)));
+                state.transitions = new State[alphabet.size()];
+                for (int symbol = 0; symbol < alphabet.size(); ++symbol) {
+                    addTransition(state, symbol, positions);
+                }
+                work.addAll(states.subList(knownStates, states.size()));
+            }
+            return ImmutableList.copyOf(states);
+        }
+
+        private void addPositions(int expressionIndex, PathExpression expression) {
+            ImmutableList<Particle> particles = expression.particles();
+            starts.set(names.size());
+            for (int i = 0; i < particles.size(); ++i) {
+                Particle particle = particles.get(i);
+                boolean multiLevel = particle instanceof MultiLevelWildcard;
+                if (particle instanceof Name) {
+                    alphabet.intern(particle.name());
+                    names.add(particle.name());
+                    predicates.add(((Name) particle).predicates());
+                } else {
+                    names.add(null);
+                    predicates.add(ImmutableList.of());
+                }
+                loops.add((i == 0 && !expression.isAbsolute()) || multiLevel);
+                anyName.add(particle instanceof OneLevelWildcard);
+                skippable.add(multiLevel);
+                acceptedExpressions.add(-1);
+            }
+            names.add(null);
+            loops.add(false);
+            anyName.add(false);
+            skippable.add(false);
+            predicates.add(ImmutableList.of());
+            acceptedExpressions.add(expressionIndex);
+        }
+
+        /**
+         * Adds the transition on the given symbol, with a guard if it depends on predicates.
+         */
+        private void addTransition(State state, int symbol, BitSet positions) {
+            String name = alphabet.name(symbol);
+            BitSet unconditional = move(positions, name);
+            List<ImmutableList<AttributePredicate>> conditions = new ArrayList<>();
+            List<BitSet> conditional = new ArrayList<>();
+            for (int p = positions.nextSetBit(0); p >= 0; p = positions.nextSetBit(p + 1)) {
+                if (!predicates.get(p).isEmpty() && name.equals(names.get(p))) {
+                    int c = conditions.indexOf(predicates.get(p));
+                    if (c < 0) {
+                        c = conditions.size();
+                        conditions.add(predicates.get(p));
+                        conditional.add(new BitSet());
+                    }
+                    conditional.get(c).set(p + 1);
+                }
+            }
+            if (conditions.isEmpty()) {
+                state.transitions[symbol] = stateFor(closure(unconditional));
+                return;
+            }
+            checkArgument(conditions.size() <= MAX_CONDITIONS,
+                    "Too many different attribute predicates on %s", name);
+            State[] targets = new State[1 << conditions.size()];
+            for (int holding = 0; holding < targets.length; ++holding) {
+                BitSet target = (BitSet) unconditional.clone();
+                for (int c = 0; c < conditions.size(); ++c) {
+                    if ((holding & (1 << c)) != 0) {
+                        target.or(conditional.get(c));
+                    }
+                }
+                targets[holding] = stateFor(closure(target));
+            }
+            AttributePredicate[][] guardConditions = new AttributePredicate[conditions.size()][];
+            for (int c = 0; c < guardConditions.length; ++c) {
+                guardConditions[c] = conditions.get(c).toArray(new AttributePredicate[0]);
+            }
+            if (state.guards == null) {
+                state.guards = new Guard[alphabet.size()];
+            }
+            state.guards[symbol] = new Guard(guardConditions, targets);
+            state.transitions[symbol] = targets[0];
+        }
+
+        /**
+         * Returns the positions that the given ones move to on the given name, or on any other
+         * name if it is null, leaving out the moves that depend on predicates.
+         */
+        private BitSet move(BitSet positions, @Nullable String name) {
+            BitSet result = new BitSet();
+            for (int p = positions.nextSetBit(0); p >= 0; p = positions.nextSetBit(p + 1)) {
+                if (loops.get(p)) {
+                    result.set(p);
+                }
+                String expected = names.get(p);
+                if (anyName.get(p) || (expected != null && expected.equals(name)
+                        && predicates.get(p).isEmpty())) {
+                    result.set(p + 1);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Adds the positions that follow a {@code **} to the given positions.
+         */
+        private BitSet closure(BitSet positions) {
+            for (int p = positions.nextSetBit(0); p >= 0; p = positions.nextSetBit(p + 1)) {
+                if (skippable.get(p)) {
+                    positions.set(p + 1);
+                }
+            }
+            return positions;
+        }
+
+        private State stateFor(BitSet positions) {
+            State state = statesByPositions.get(positions);
+            if (state == null) {
+                int[] accepted = acceptedBy(positions);
+                boolean dead = positions.cardinality() == accepted.length;
+                state = new State(states.size(), accepted, dead);
+                statesByPositions.put(positions, state);
+                states.add(state);
+                positionsOfState.add(positions);
+            }
+            return state;
+        }
+
+        private int[] acceptedBy(BitSet positions) {
+            return positions.stream()
+                    .map(acceptedExpressions::get)
+                    .filter(e -> e >= 0)
+                    .toArray();
+        }
+    }
+
+}
@@ -2,22 +2,36 @@ package tzeth.exhume.sax;
 
 import static com.google.common.base.Preconditions.*;
 import static tzeth.exhume.sax.Path.SEPARATOR;
+import static tzeth.preconds.MorePreconditions.checkNotEmpty;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
 
+import org.xml.sax.Attributes;
+
 import com.google.common.collect.ImmutableList;
 
-import tzeth.exceptions.NotImplementedYetException;
 import tzeth.exhume.ExhumeException;
 
+/**
+ * An expression that matches element paths: element names separated by {@code /}, where a
+ * {@code *} matches any one element and a {@code **} any number of elements, including none. An
+ * absolute expression, that starts with {@code /}, matches paths from the root element; a relative
+ * one matches the end of a path.
+ * <p>
+ * A name can be followed by attribute predicates, such as {@code Book[@type='ebook']/Price},
+ * which the element must satisfy as well. Predicates are checked when the element starts, so
+ * nothing inside an element that does not satisfy them is matched by the expression.
+ */
 public final class PathExpression {
-    // TODO: Implement wildcard support
-
     private final ImmutableList<Particle> particles;
     private final boolean absolute;
+    /** The expression compiled on its own, for {@link #matches(Path)}. */
+    @Nullable
+    private volatile PathAutomaton matcher;
 
     public static PathExpression of(String parent, String leaf) {
         checkNotNull(leaf);
@@ -47,13 +61,13 @@ public final class PathExpression {
         this.absolute = expression.startsWith(SEPARATOR);
         ImmutableList.Builder<Particle> builder = ImmutableList.builder();
         String toSplit = this.absolute ? expression.substring(1) : expression;
-        for (String part : toSplit.split("\\/")) {
+        for (String part : split(toSplit)) {
             if (part.equals("*")) {
                 builder.add(new OneLevelWildcard());
             } else if (part.equals("**")) {
                 builder.add(new MultiLevelWildcard());
             } else {
-                builder.add(new Name(part));
+                builder.add(name(part));
             }
         }
         this.particles = builder.build();
@@ -73,29 +87,88 @@ public final class PathExpression {
         }
     }
 
+    /**
+     * Splits the expression at the separators that are not inside a quoted attribute value.
+     */
+    private static List<String> split(String expression) {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        char quote = 0;
+        for (int i = 0; i < expression.length(); ++i) {
+            char c = expression.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == SEPARATOR.charAt(0)) {
+                parts.add(expression.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(expression.substring(start));
+        return parts;
+    }
+
+    private static Name name(String part) {
+        int bracket = part.indexOf('[');
+        if (bracket < 0) {
+            return new Name(part);
+        }
+        String name = part.substring(0, bracket);
+        checkArgument(!name.isEmpty() && !name.equals("*") && !name.equals("**"),
+                "Attribute predicates must follow an element name: %s", part);
+        ImmutableList.Builder<AttributePredicate> predicates = ImmutableList.builder();
+        for (int p = bracket; p < part.length();) {
+            int equals = part.indexOf('=', p);
+            checkArgument(part.startsWith("[@", p) && equals > p + 2
+                    && equals + 1 < part.length(), "Invalid attribute predicate: %s", part);
+            char quote = part.charAt(equals + 1);
+            int close = part.indexOf(quote, equals + 2);
+            checkArgument((quote == '\'' || quote == '"') && close > 0
+                    && part.startsWith("]", close + 1), "Invalid attribute predicate: %s", part);
+            predicates.add(new AttributePredicate(part.substring(p + 2, equals),
+                    part.substring(equals + 2, close)));
+            p = close + 2;
+        }
+        return new Name(name, predicates.build());
+    }
+
+    ImmutableList<Particle> particles() {
+        return particles;
+    }
+
+    boolean isAbsolute() {
+        return absolute;
+    }
+
     public boolean matches(String path) {
         return matches(Path.of(path));
     }
 
+    /**
+     * Returns true if the expression matches the given path. A path has no attributes, so a name
+     * with attribute predicates never matches an element of it.
+     */
     public boolean matches(Path path) {
-        ImmutableList<String> pathParticles = path.getParticles();
-        if (absolute) {
-            List<String> expressionParts = this.particles.stream()
-                    .map(Particle::name)
-                    .collect(Collectors.toList());
-            return pathParticles.equals(expressionParts);
-        } else {
-            String pathAsString = path.toString();
-            String expressionPartsAsString = this.toString();
-            return pathAsString.endsWith(expressionPartsAsString);
+        PathAutomaton automaton = matcher;
+        if (automaton == null) {
+            automaton = PathAutomaton.compile(ImmutableList.of(this));
+            matcher = automaton;
+        }
+        PathAutomaton.State state = automaton.initial();
+        for (String name : path.getParticles()) {
+            state = automaton.next(state, name);
         }
+        return state.accepted().length > 0;
     }
 
     @Override
     public String toString() {
         String prefix = absolute ? SEPARATOR : "";
         return this.particles.stream()
-                .map(Particle::name)
+                .map(Particle::toString)
                 .collect(Collectors.joining(SEPARATOR, prefix, ""));
     }
 
@@ -115,42 +188,106 @@ public final class PathExpression {
         return toString().hashCode();
     }
 
-    private static interface Particle {
+    static interface Particle {
         public String name();
     }
 
-    private static final class Name implements Particle {
+    static final class Name implements Particle {
         private final String name;
+        private final ImmutableList<AttributePredicate> predicates;
 
         public Name(String name) {
+            this(name, ImmutableList.of());
+        }
+
+        public Name(String name, ImmutableList<AttributePredicate> predicates) {
             this.name = name;
+            this.predicates = predicates;
         }
 
         @Override
         public String name() {
             return name;
         }
-    }
 
-    private static final class OneLevelWildcard implements Particle {
-        public OneLevelWildcard() {
-            throw new NotImplementedYetException();
+        /**
+         * Returns the predicates that the attributes of the element must satisfy.
+         */
+        public ImmutableList<AttributePredicate> predicates() {
+            return predicates;
         }
 
+        @Override
+        public String toString() {
+            return predicates.stream()
+                    .map(AttributePredicate::toString)
+                    .collect(Collectors.joining("", name, ""));
+        }
+    }
+
+    static final class OneLevelWildcard implements Particle {
         @Override
         public String name() {
             return "*";
         }
-    }
 
-    private static final class MultiLevelWildcard implements Particle {
-        public MultiLevelWildcard() {
-            throw new NotImplementedYetException();
+        @Override
+        public String toString() {
+            return name();
         }
+    }
 
+    static final class MultiLevelWildcard implements Particle {
         @Override
         public String name() {
             return "**";
         }
+
+        @Override
+        public String toString() {
+            return name();
+        }
+    }
+
+    /**
+     * Requires an attribute of the element to have a given value.
+     */
+    static final class AttributePredicate {
+        private final String attribute;
+        private final String value;
+
+        public AttributePredicate(String attribute, String value) {
+            checkArgument(!(value.indexOf('\'') >= 0 && value.indexOf('"') >= 0),
+                    "An attribute value cannot contain both kinds of quotes: %s", value);
+            this.attribute = checkNotEmpty(attribute);
+            this.value = value;
+        }
+
+        public boolean test(Attributes attributes) {
+            return value.equals(attributes.getValue(attribute));
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj instanceof AttributePredicate) {
+                AttributePredicate o = (AttributePredicate) obj;
+                return attribute.equals(o.attribute) && value.equals(o.value);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * attribute.hashCode() + value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            char quote = value.indexOf('\'') >= 0 ? '"' : '\'';
+            return "[@" + attribute + "=" + quote + value + quote + "]";
+        }
     }
 }
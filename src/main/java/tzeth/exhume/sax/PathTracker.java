@@ -0,0 +1,95 @@
+package tzeth.exhume.sax;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the path of the current element as a stack of interned name ids.
+ * <p>
+ * Pushing and popping are constant time and do not allocate (beyond growing the stack). A hash of
+ * the path is maintained incrementally, and is used to cache the {@link Path} objects that are
+ * created on demand, so repeated requests for the same path share one instance.
+ */
+final class PathTracker {
+    private static final int CACHE_SIZE = 64;
+
+    private final ElementNames names;
+    private int[] ids = new int[16];
+    private int[] hashes = new int[17];
+    private int depth;
+    private final CachedPath[] cache = new CachedPath[CACHE_SIZE];
+
+    public PathTracker(ElementNames names) {
+        this.names = names;
+    }
+
+    public void push(int id) {
+        if (depth == ids.length) {
+            ids = Arrays.copyOf(ids, 2 * depth);
+            hashes = Arrays.copyOf(hashes, 2 * depth + 1);
+        }
+        ids[depth] = id;
+        hashes[depth + 1] = 31 * hashes[depth] + id + 1;
+        ++depth;
+    }
+
+    public void pop() {
+        checkState(depth > 0, "Path is empty");
+        --depth;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public int hash() {
+        return hashes[depth];
+    }
+
+    public int idAt(int level) {
+        return ids[level];
+    }
+
+    public Path toPath() {
+        checkState(depth > 0, "Path is empty");
+        int hash = hash();
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        CachedPath cached = cache[slot];
+        if (cached == null || !cached.matches(hash, ids, depth)) {
+            String[] particles = new String[depth];
+            for (int n = 0; n < depth; ++n) {
+                particles[n] = names.name(ids[n]);
+            }
+            Path path = Path.fromParticles(particles);
+            cached = new CachedPath(hash, Arrays.copyOf(ids, depth), path);
+            cache[slot] = cached;
+        }
+        return cached.path;
+    }
+
+    private static final class CachedPath {
+        private final int hash;
+        private final int[] ids;
+        private final Path path;
+
+        public CachedPath(int hash, int[] ids, Path path) {
+            this.hash = hash;
+            this.ids = ids;
+            this.path = path;
+        }
+
+        public boolean matches(int hash, int[] ids, int depth) {
+            if (this.hash != hash || this.ids.length != depth) {
+                return false;
+            }
+            for (int n = 0; n < depth; ++n) {
+                if (this.ids[n] != ids[n]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,262 @@
+package tzeth.exhume.sax;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nullable;
+
+import org.xml.sax.SAXException;
+
+import tzeth.exhume.ExhumeException;
+
+/**
+ * Runs handlers on a dispatch thread of their own, while the parse continues on the calling
+ * thread.
+ * <p>
+ * The parsing thread matches paths, converts values and copies attributes where a start handler
+ * needs them, and appends the resulting events to a batch. Full batches are published through a
+ * ring of preallocated batches with a single producer and a single consumer, which needs no locks:
+ * each side only writes its own sequence number. The dispatch thread replays every batch on the
+ * handlers, and returns it to the ring for reuse.
+ * <p>
+ * The values of end methods that take a primitive are kept in the batch itself, so they cross
+ * the ring without boxing. Other events are still objects: a detached copy of the start element
+ * where a start handler needs it, and the converted value of every other end method.
+ */
+final class Pipeline implements HandlerExecution {
+    static final int BATCH_SIZE = 1024;
+    static final int BATCHES = 16;
+
+    private final Object[] handlers;
+    private final String name;
+    @Nullable
+    private Thread dispatcher;
+    private final InvocationLog[] ring;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong eventsPublished = new AtomicLong();
+    private final AtomicLong eventsHandled = new AtomicLong();
+    private final EndBatches batches = new EndBatches();
+    private volatile boolean producerDone;
+    private volatile boolean producerCompleted;
+    @Nullable
+    private volatile Throwable failure;
+    private InvocationLog current;
+
+    public Pipeline(Object[] handlers, String name) {
+        this.handlers = handlers;
+        this.name = name;
+        this.ring = new InvocationLog[BATCHES];
+        for (int n = 0; n < BATCHES; ++n) {
+            ring[n] = new InvocationLog();
+        }
+        this.current = ring[0];
+    }
+
+    /**
+     * Runs the parse on the calling thread, and the handlers on a new dispatch thread. Returns when
+     * both are done.
+     */
+    @Override
+    public void run(Parse parse) throws SAXException, IOException {
+        start();
+        boolean completed = false;
+        try {
+            parse.run();
+            completed = true;
+        } finally {
+            finish(completed);
+        }
+    }
+
+    public void start() {
+        dispatcher = new Thread(this::dispatch, name);
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Waits for the dispatch thread to run the handlers. If the parse completed, the last batch is
+     * published first, and a handler failure is rethrown.
+     */
+    public void finish(boolean completed) throws InterruptedIOException {
+        try {
+            if (completed) {
+                publish();
+            }
+        } finally {
+            producerCompleted = completed;
+            producerDone = true;
+            awaitDispatcher(completed);
+        }
+        if (completed) {
+            rethrowFailure();
+        }
+    }
+
+    /**
+     * Finishes all the pipelines, even if one of them fails. The first failure is rethrown. A
+     * handler that stops the parse is not a failure: the other pipelines are finished as if the
+     * parse completed, so they handle their last events and batches, and the stop is rethrown
+     * once all are done.
+     */
+    static void finishAll(Pipeline[] pipelines, boolean completed) throws IOException {
+        Exception failure = null;
+        StopParsing stop = null;
+        for (Pipeline pipeline : pipelines) {
+            try {
+                pipeline.finish(completed && failure == null);
+            } catch (StopParsing e) {
+                if (stop == null) {
+                    stop = e;
+                }
+            } catch (IOException | RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+        if (stop != null) {
+            throw stop;
+        }
+    }
+
+    private void awaitDispatcher(boolean completed) throws InterruptedIOException {
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (completed) {
+                throw new InterruptedIOException("Interrupted while waiting for the handlers");
+            }
+        }
+    }
+
+    /**
+     * Returns the number of events that have been handed to the dispatch thread, but not handled
+     * yet. Can be called from any thread.
+     */
+    public long lag() {
+        return eventsPublished.get() - eventsHandled.get();
+    }
+
+    /**
+     * Appends recorded invocations, in order.
+     */
+    public void append(InvocationLog invocations) {
+        current.addAll(invocations);
+        if (current.size() >= BATCH_SIZE) {
+            publish();
+        }
+    }
+
+    @Override
+    public void start(StartBinding binding, StartOfElement soe) {
+        current.start(binding, soe);
+        if (current.size() >= BATCH_SIZE) {
+            publish();
+        }
+    }
+
+    @Override
+    public void end(EndBinding binding, Object value) {
+        current.end(binding, value);
+        if (current.size() >= BATCH_SIZE) {
+            publish();
+        }
+    }
+
+    @Override
+    public void endPrimitive(EndBinding binding, long value) {
+        current.endPrimitive(binding, value);
+        if (current.size() >= BATCH_SIZE) {
+            publish();
+        }
+    }
+
+    private void publish() {
+        rethrowFailure();
+        if (current.size() == 0) {
+            return;
+        }
+        eventsPublished.lazySet(eventsPublished.get() + current.size());
+        long next = published.get() + 1;
+        published.set(next);
+        for (int idle = 0; next - consumed.get() >= BATCHES; ++idle) {
+            rethrowFailure();
+            idle(idle);
+        }
+        current = ring[(int) (next % BATCHES)];
+    }
+
+    private void dispatch() {
+        for (int idle = 0;; ++idle) {
+            long sequence = consumed.get();
+            if (sequence < published.get()) {
+                InvocationLog batch = ring[(int) (sequence % BATCHES)];
+                try {
+                    batch.replay(handlers, batches);
+                } catch (Throwable e) {
+                    if (e instanceof StopParsing) {
+                        // A handler ended the parse; the others still get their last batches
+                        flushBatches();
+                    }
+                    if (failure == null) {
+                        failure = e;
+                    }
+                    return;
+                }
+                eventsHandled.lazySet(eventsHandled.get() + batch.size());
+                batch.clear();
+                consumed.set(sequence + 1);
+                idle = 0;
+            } else if (producerDone && sequence == published.get()) {
+                if (producerCompleted) {
+                    flushBatches();
+                }
+                return;
+            } else {
+                idle(idle);
+            }
+        }
+    }
+
+    private void flushBatches() {
+        try {
+            batches.flush(handlers);
+        } catch (Throwable e) {
+            failure = e;
+        }
+    }
+
+    private void rethrowFailure() {
+        Throwable e = failure;
+        if (e == null) {
+            return;
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new ExhumeException(e);
+    }
+
+    private static void idle(int times) {
+        if (times < 100) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+}
@@ -0,0 +1,222 @@
+package tzeth.exhume.sax;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static tzeth.preconds.MorePreconditions.checkNotEmpty;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+
+import tzeth.exhume.ExhumeException;
+import tzeth.exhume.sax.ValueConverters.ValueFactory;
+
+/**
+ * Binds the records of a {@link RecordPath} class to new objects of the class, and hands every
+ * object to a consumer when its record ends.
+ * <p>
+ * The constructor and the setters of the {@link Bind} fields are looked up once, when the binder
+ * is created, and the fields are bound as handler methods of the binder, so values are converted
+ * like those of any {@link ElementEnd} method. Only the records that are open are referenced, so
+ * memory use does not grow with the number of records.
+ */
+final class RecordBinder<T> {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Class<T> type;
+    private final String recordPath;
+    private final MethodHandle constructor;
+    private final ImmutableList<FieldBinding> fields;
+    private final Consumer<? super T> consumer;
+    /** The open records, innermost first. */
+    private final Deque<Object> open = new ArrayDeque<>();
+
+    /**
+     * Creates a binder for the records at the {@link RecordPath} of the given class.
+     *
+     * @param converters the conversions of the attribute values
+     */
+    public RecordBinder(Class<T> type, Consumer<? super T> consumer,
+            ValueConverters converters) {
+        this(type, recordPathOf(type), consumer, converters);
+    }
+
+    /**
+     * Creates a binder for the records at the given path.
+     *
+     * @param converters the conversions of the attribute values
+     */
+    public RecordBinder(Class<T> type, String recordPath, Consumer<? super T> consumer,
+            ValueConverters converters) {
+        this.type = type;
+        this.recordPath = PathExpression.of(recordPath).toString();
+        this.constructor = constructorOf(type);
+        ImmutableList.Builder<FieldBinding> fields = ImmutableList.builder();
+        for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                Bind bind = field.getAnnotation(Bind.class);
+                if (bind != null) {
+                    fields.add(new FieldBinding(field, bind.value(), recordPath, converters));
+                }
+            }
+        }
+        this.fields = fields.build();
+        checkArgument(!this.fields.isEmpty(), "%s has no fields annotated with Bind",
+                type.getName());
+        this.consumer = checkNotNull(consumer);
+    }
+
+    public HandlerDispatcher dispatcher() {
+        return bindings -> {
+            bindings.onStart(recordPath, (h, soe) -> ((RecordBinder<?>) h).recordStart());
+            for (FieldBinding field : fields) {
+                if (field.attribute != null) {
+                    bindings.onStart(field.expression,
+                            (h, soe) -> ((RecordBinder<?>) h).setAttribute(field, soe));
+                } else {
+                    bindings.onEnd(field.expression, field.valueType,
+                            (h, value) -> ((RecordBinder<?>) h).set(field, value));
+                }
+            }
+            bindings.onEnd(recordPath, EndOfElement.class,
+                    (h, value) -> ((RecordBinder<?>) h).recordEnd());
+        };
+    }
+
+    private void recordStart() {
+        try {
+            open.push(constructor.invoke());
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    private void setAttribute(FieldBinding field, StartOfElement soe) {
+        String value = soe.attributeValue(field.attribute);
+        if (value != null) {
+            set(field, field.attributeValues.of(new EndOfElement(null, null, soe.qName(),
+                    value)));
+        }
+    }
+
+    private void set(FieldBinding field, Object value) {
+        Object record = open.peek();
+        try {
+            if (field.getter != null) {
+                @SuppressWarnings("unchecked")
+                List<Object> values = (List<Object>) field.getter.invokeExact(record);
+                if (values == null) {
+                    values = new ArrayList<>();
+                    field.setter.invokeExact(record, (Object) values);
+                }
+                values.add(value);
+            } else {
+                field.setter.invokeExact(record, value);
+            }
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    private void recordEnd() {
+        consumer.accept(type.cast(open.pop()));
+    }
+
+    static String recordPathOf(Class<?> type) {
+        RecordPath path = type.getAnnotation(RecordPath.class);
+        checkArgument(path != null, "%s is not annotated with RecordPath", type.getName());
+        return path.value();
+    }
+
+    private static MethodHandle constructorOf(Class<?> type) {
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return LOOKUP.unreflectConstructor(constructor)
+                    .asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(
+                    type.getName() + " must have a constructor without parameters", e);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new ExhumeException("Cannot access the constructor of " + type.getName(), e);
+        }
+    }
+
+    private static RuntimeException propagate(Throwable e) {
+        Throwables.throwIfUnchecked(e);
+        throw new ExhumeException(e);
+    }
+
+    /**
+     * A field, with the expression it is bound to and its precomputed accessors.
+     */
+    private static final class FieldBinding {
+        private final String expression;
+        @Nullable
+        private final String attribute;
+        private final Class<?> valueType;
+        @Nullable
+        private final ValueFactory attributeValues;
+        private final MethodHandle setter;
+        /** The getter of a List field, to which values are added. */
+        @Nullable
+        private final MethodHandle getter;
+
+        public FieldBinding(Field field, String path, String recordPath,
+                ValueConverters converters) {
+            checkNotEmpty(path);
+            checkArgument(!Modifier.isStatic(field.getModifiers())
+                    && !Modifier.isFinal(field.getModifiers()),
+                    "A Bind field cannot be static or final: %s", field);
+            int last = path.lastIndexOf(Path.SEPARATOR) + 1;
+            String element = path;
+            if (path.startsWith("@", last)) {
+                this.attribute = checkNotEmpty(path.substring(last + 1));
+                element = path.substring(0, Math.max(0, last - 1));
+            } else {
+                this.attribute = null;
+            }
+            this.expression = PathExpression.of(recordPath, element).toString();
+            boolean list = field.getType() == List.class;
+            this.valueType = list ? elementType(field) : field.getType();
+            this.attributeValues = attribute != null ? converters.factory(valueType) : null;
+            try {
+                field.setAccessible(true);
+                this.setter = LOOKUP.unreflectSetter(field)
+                        .asType(MethodType.methodType(void.class, Object.class, Object.class));
+                this.getter = list
+                        ? LOOKUP.unreflectGetter(field)
+                                .asType(MethodType.methodType(List.class, Object.class))
+                        : null;
+            } catch (IllegalAccessException | RuntimeException e) {
+                throw new ExhumeException("Cannot access the field " + field, e);
+            }
+        }
+
+        private static Class<?> elementType(Field field) {
+            Type type = field.getGenericType();
+            Type element = type instanceof ParameterizedType
+                    ? ((ParameterizedType) type).getActualTypeArguments()[0]
+                    : null;
+            checkArgument(element instanceof Class,
+                    "A List field must have a value type as its type argument: %s", field);
+            return (Class<?>) element;
+        }
+    }
+
+}
@@ -0,0 +1,16 @@
+package tzeth.exhume.sax;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class whose objects are bound to the records at the given path, such as
+ * {@code /Inventory/Books/Book}; see {@link ExhumeSaxParser#registerRecordConsumer}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface RecordPath {
+    public String value();
+}
@@ -0,0 +1,95 @@
+package tzeth.exhume.sax;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+import org.xml.sax.SAXException;
+
+import tzeth.exhume.ExhumeException;
+
+/**
+ * Iterates over the records of a document, parsing only as far as the records are pulled.
+ * <p>
+ * Every time the records parsed so far have been taken, the next chunk of input is read and fed
+ * to a {@link NativeTokenizer}, on the calling thread, and the records that end in it are queued.
+ * Only the records of a single chunk are ever held, however long the document is. The channel is
+ * closed when the last record has been taken, when the parse fails, or when the iterator is
+ * closed.
+ */
+final class RecordStream<T> implements Iterator<T>, Closeable {
+    private final ReadableByteChannel channel;
+    private final Queue<T> records = new ArrayDeque<>();
+    private final NativeTokenizer tokenizer;
+    private final ByteBuffer chunk = ByteBuffer.allocate(NativeEngine.CHUNK_SIZE);
+    private boolean ended;
+
+    public RecordStream(ReadableByteChannel channel, String recordPath, Class<T> type,
+            ValueConverters converters) {
+        this.channel = channel;
+        ParsePlan.Builder planBuilder = new ParsePlan.Builder(converters);
+        RecordBinder<T> binder = new RecordBinder<>(type, recordPath, records::add, converters);
+        planBuilder.addHandler(RecordBinder.class, binder.dispatcher());
+        ParseSession session = new ParseSession(planBuilder.build(), new Object[] { binder },
+                Engine.NATIVE);
+        session.begin();
+        this.tokenizer = new NativeTokenizer(session);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (records.isEmpty() && !ended) {
+            readChunk();
+        }
+        return !records.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return records.remove();
+    }
+
+    private void readChunk() {
+        boolean failed = true;
+        try {
+            chunk.clear();
+            if (channel.read(chunk) < 0) {
+                tokenizer.end();
+                close();
+            } else {
+                chunk.flip();
+                tokenizer.feed(chunk);
+            }
+            failed = false;
+        } catch (IOException | SAXException e) {
+            throw new ExhumeException(e);
+        } finally {
+            if (failed) {
+                closeQuietly();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        ended = true;
+        channel.close();
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            // the parse failure is reported instead
+        }
+    }
+
+}
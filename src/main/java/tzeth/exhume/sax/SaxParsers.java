@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -11,11 +12,18 @@ import javax.xml.parsers.SAXParserFactory;
 
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
 
 import tzeth.exhume.ExhumeException;
 
 public final class SaxParsers {
+    private static final SAXParserFactory DEFAULT_FACTORY = createFactory(false);
+    private static final SAXParserFactory NAMESPACE_AWARE_FACTORY = createFactory(true);
+    private static final ThreadLocal<SAXParser[]> IDLE_PARSERS = ThreadLocal
+            .withInitial(() -> new SAXParser[2]);
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
 
     public static void parseFile(File file, DefaultHandler handler)
             throws SAXException, IOException {
@@ -24,8 +32,12 @@ public final class SaxParsers {
 
     public static void parseFile(File file, DefaultHandler handler, boolean namespaceAware)
             throws SAXException, IOException {
-        SAXParser p = createParser(namespaceAware);
-        p.parse(file, handler);
+        SAXParser p = acquireParser(namespaceAware);
+        try {
+            p.parse(file, handler);
+        } finally {
+            releaseParser(p, namespaceAware);
+        }
     }
 
     public static void parseStream(InputStream is, DefaultHandler handler)
@@ -35,8 +47,12 @@ public final class SaxParsers {
 
     public static void parseStream(InputStream is, DefaultHandler handler, boolean namespaceAware)
             throws SAXException, IOException {
-        SAXParser p = createParser(namespaceAware);
-        p.parse(is, handler);
+        SAXParser p = acquireParser(namespaceAware);
+        try {
+            p.parse(is, handler);
+        } finally {
+            releaseParser(p, namespaceAware);
+        }
     }
 
     public static void parseSource(InputSource is, DefaultHandler handler)
@@ -46,8 +62,12 @@ public final class SaxParsers {
 
     public static void parseSource(InputSource is, DefaultHandler handler, boolean namespaceAware)
             throws SAXException, IOException {
-        SAXParser p = createParser(namespaceAware);
-        p.parse(is, handler);
+        SAXParser p = acquireParser(namespaceAware);
+        try {
+            p.parse(is, handler);
+        } finally {
+            releaseParser(p, namespaceAware);
+        }
     }
 
     public static void parseXml(String xml, DefaultHandler handler) throws SAXException {
@@ -65,16 +85,91 @@ public final class SaxParsers {
         }
     }
 
+    /**
+     * Returns the number of parses that reused a pooled parser, and the number that had to create
+     * a new one, since the class was loaded.
+     */
+    public static PoolStatistics poolStatistics() {
+        return new PoolStatistics(HITS.sum(), MISSES.sum());
+    }
+
+    /**
+     * Takes the idle parser of the current thread, or creates a new one if the thread has none
+     * (which is also the case when a handler parses another document from within a parse).
+     */
+    private static SAXParser acquireParser(boolean namespaceAware) {
+        SAXParser[] idle = IDLE_PARSERS.get();
+        int index = namespaceAware ? 1 : 0;
+        SAXParser p = idle[index];
+        if (p != null) {
+            idle[index] = null;
+            HITS.increment();
+            return p;
+        }
+        MISSES.increment();
+        return createParser(namespaceAware);
+    }
+
+    private static void releaseParser(SAXParser p, boolean namespaceAware) {
+        try {
+            XMLReader reader = p.getXMLReader();
+            reader.setContentHandler(null);
+            reader.setDTDHandler(null);
+            reader.setEntityResolver(null);
+            reader.setErrorHandler(null);
+            p.reset();
+        } catch (RuntimeException | SAXException e) {
+            // The parser cannot be reset, so it is not reused.
+            return;
+        }
+        SAXParser[] idle = IDLE_PARSERS.get();
+        int index = namespaceAware ? 1 : 0;
+        if (idle[index] == null) {
+            idle[index] = p;
+        }
+    }
+
     private static SAXParser createParser(boolean namespaceAware) {
+        SAXParserFactory f = namespaceAware ? NAMESPACE_AWARE_FACTORY : DEFAULT_FACTORY;
         try {
-            SAXParserFactory f = SAXParserFactory.newInstance();
-            f.setNamespaceAware(namespaceAware);
-            return f.newSAXParser();
+            // Factories are not guaranteed to be thread-safe.
+            synchronized (f) {
+                return f.newSAXParser();
+            }
         } catch (ParserConfigurationException | SAXException e) {
             throw new ExhumeException(e);
         }
     }
 
+    private static SAXParserFactory createFactory(boolean namespaceAware) {
+        SAXParserFactory f = SAXParserFactory.newInstance();
+        f.setNamespaceAware(namespaceAware);
+        return f;
+    }
+
+    public static final class PoolStatistics {
+        private final long hits;
+        private final long misses;
+
+        private PoolStatistics(long hits, long misses) {
+            this.hits = hits;
+            this.misses = misses;
+        }
+
+        public long hits() {
+            return hits;
+        }
+
+        public long misses() {
+            return misses;
+        }
+
+        @Override
+        public String toString() {
+            return "PoolStatistics[hits=" + hits + ", misses=" + misses + "]";
+        }
+    }
+
     private SaxParsers() {/**/}
 
 }
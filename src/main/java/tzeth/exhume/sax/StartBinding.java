@@ -0,0 +1,31 @@
+package tzeth.exhume.sax;
+
+import tzeth.exhume.ExhumeException;
+
+/**
+ * An {@link ElementStart} method bound to the handler in a given slot of a parse session.
+ */
+final class StartBinding {
+    private final int slot;
+    private final StartInvoker invoker;
+
+    public StartBinding(int slot, StartInvoker invoker) {
+        this.slot = slot;
+        this.invoker = invoker;
+    }
+
+    public int slot() {
+        return slot;
+    }
+
+    public void invoke(Object handler, StartOfElement soe) {
+        try {
+            invoker.invoke(handler, soe);
+        } catch (ExhumeException | StopParsing e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ExhumeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,17 @@
+package tzeth.exhume.sax;
+
+/**
+ * Calls an {@link ElementStart} handler method on a handler object.
+ */
+@FunctionalInterface
+public interface StartInvoker {
+    public void invoke(Object handler, StartOfElement soe);
+
+    /**
+     * Calls a method that returns a {@link ParseAction}.
+     */
+    @FunctionalInterface
+    public static interface Controlling {
+        public ParseAction invoke(Object handler, StartOfElement soe);
+    }
+}
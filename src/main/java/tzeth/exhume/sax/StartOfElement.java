@@ -1,24 +1,54 @@
 package tzeth.exhume.sax;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import static tzeth.preconds.MorePreconditions.checkNotEmpty;
 
 import javax.annotation.Nullable;
 
 import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
 
 public final class StartOfElement {
     private final String uri;
     private final String localName;
     private final String qName;
     private final Attributes attributes;
+    @Nullable
+    private final PathTracker pathTracker;
+    @Nullable
+    private final Path resolvedPath;
 
     public StartOfElement(@Nullable String uri, @Nullable String localName, String qName,
             Attributes attributes) {
+        this(uri, localName, qName, attributes, null);
+    }
+
+    StartOfElement(@Nullable String uri, @Nullable String localName, String qName,
+            Attributes attributes, @Nullable PathTracker pathTracker) {
         this.uri = uri;
         this.localName = localName;
         this.qName = checkNotEmpty(qName);
         this.attributes = checkNotNull(attributes);
+        this.pathTracker = pathTracker;
+        this.resolvedPath = null;
+    }
+
+    private StartOfElement(StartOfElement soe) {
+        this.uri = soe.uri;
+        this.localName = soe.localName;
+        this.qName = soe.qName;
+        this.attributes = new AttributesImpl(soe.attributes);
+        this.pathTracker = null;
+        this.resolvedPath = soe.pathTracker != null ? soe.pathTracker.toPath() : soe.resolvedPath;
+    }
+
+    /**
+     * Returns a copy that stays valid after the parser has moved on: the attributes are copied,
+     * and the path is resolved.
+     */
+    StartOfElement detach() {
+        return new StartOfElement(this);
     }
 
     @Nullable
@@ -35,6 +65,18 @@ public final class StartOfElement {
         return qName;
     }
 
+    /**
+     * Returns the absolute path of the element. Like the attributes, the path is only available
+     * while the handler that received this object is running.
+     */
+    public String path() {
+        if (resolvedPath != null) {
+            return resolvedPath.toString();
+        }
+        checkState(pathTracker != null, "The path of the element is not known");
+        return pathTracker.toPath().toString();
+    }
+
     public Attributes attributes() {
         return attributes;
     }
@@ -0,0 +1,199 @@
+package tzeth.exhume.sax;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+import tzeth.exhume.ExhumeException;
+
+/**
+ * Drives a {@link ParseSession} from an {@link XMLStreamReader}.
+ */
+final class StaxEngine {
+    private static final ThreadLocal<XMLInputFactory> FACTORIES = ThreadLocal
+            .withInitial(StaxEngine::createFactory);
+
+    public static void parseXml(String xml, ParseSession session) throws SAXException {
+        try {
+            parse(FACTORIES.get().createXMLStreamReader(new StringReader(xml)), session);
+        } catch (XMLStreamException e) {
+            throw new SAXException(e.getMessage(), e);
+        }
+    }
+
+    public static void parseFile(File file, ParseSession session)
+            throws SAXException, IOException {
+        try (InputStream stream = new FileInputStream(file)) {
+            parseStream(stream, file.toURI().toString(), session);
+        }
+    }
+
+    public static void parseStream(InputStream stream, ParseSession session)
+            throws SAXException, IOException {
+        parseStream(stream, null, session);
+    }
+
+    private static void parseStream(InputStream stream, String systemId, ParseSession session)
+            throws SAXException {
+        try {
+            XMLStreamReader reader = systemId != null
+                    ? FACTORIES.get().createXMLStreamReader(systemId, stream)
+                    : FACTORIES.get().createXMLStreamReader(stream);
+            parse(reader, session);
+        } catch (XMLStreamException e) {
+            throw new SAXException(e.getMessage(), e);
+        }
+    }
+
+    private static void parse(XMLStreamReader reader, ParseSession session)
+            throws XMLStreamException {
+        try {
+            Attributes attributes = new StaxAttributes(reader);
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    if (session.skipsChildren()) {
+                        session.skippedStart();
+                    } else {
+                        int nameId = session.names().intern(qName(reader));
+                        session.startElement("", "", nameId, attributes);
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    session.endElement("", "");
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (session.collectsText()) {
+                        session.characters(reader.getTextCharacters(), reader.getTextStart(),
+                                reader.getTextLength());
+                    }
+                    break;
+                default:
+                    break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String qName(XMLStreamReader reader) {
+        String prefix = reader.getPrefix();
+        return prefix == null || prefix.isEmpty()
+                ? reader.getLocalName()
+                : prefix + ":" + reader.getLocalName();
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory f = XMLInputFactory.newInstance();
+        try {
+            f.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+            f.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        } catch (IllegalArgumentException e) {
+            throw new ExhumeException(e);
+        }
+        return f;
+    }
+
+    /**
+     * A view of the attributes of the current start element of a reader.
+     */
+    private static final class StaxAttributes implements Attributes {
+        private final XMLStreamReader reader;
+
+        public StaxAttributes(XMLStreamReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public int getLength() {
+            return reader.getAttributeCount();
+        }
+
+        @Override
+        public String getURI(int index) {
+            return "";
+        }
+
+        @Override
+        public String getLocalName(int index) {
+            return "";
+        }
+
+        @Override
+        public String getQName(int index) {
+            String prefix = reader.getAttributePrefix(index);
+            String localName = reader.getAttributeLocalName(index);
+            return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+        }
+
+        @Override
+        public String getType(int index) {
+            return reader.getAttributeType(index);
+        }
+
+        @Override
+        public String getValue(int index) {
+            return reader.getAttributeValue(index);
+        }
+
+        @Override
+        public int getIndex(String uri, String localName) {
+            for (int n = 0; n < getLength(); ++n) {
+                if (localName.equals(reader.getAttributeLocalName(n))) {
+                    return n;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int getIndex(String qName) {
+            for (int n = 0; n < getLength(); ++n) {
+                if (qName.equals(getQName(n))) {
+                    return n;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public String getType(String uri, String localName) {
+            int index = getIndex(uri, localName);
+            return index < 0 ? null : getType(index);
+        }
+
+        @Override
+        public String getType(String qName) {
+            int index = getIndex(qName);
+            return index < 0 ? null : getType(index);
+        }
+
+        @Override
+        public String getValue(String uri, String localName) {
+            int index = getIndex(uri, localName);
+            return index < 0 ? null : getValue(index);
+        }
+
+        @Override
+        public String getValue(String qName) {
+            int index = getIndex(qName);
+            return index < 0 ? null : getValue(index);
+        }
+    }
+
+    private StaxEngine() {/**/}
+
+}
@@ -0,0 +1,34 @@
+package tzeth.exhume.sax;
+
+/**
+ * Unwinds a parse that is ended early, up to the {@link ParseSession}, which turns it into the
+ * outcome of the parse. It never reaches the caller of a parse.
+ */
+final class StopParsing extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    static final StopParsing STOPPED = new StopParsing(ParseOutcome.STOPPED);
+    static final StopParsing CANCELLED = new StopParsing(ParseOutcome.CANCELLED);
+    static final StopParsing TIMED_OUT = new StopParsing(ParseOutcome.TIMED_OUT);
+
+    private final ParseOutcome outcome;
+
+    private StopParsing(ParseOutcome outcome) {
+        super(outcome.name(), null, false, false);
+        this.outcome = outcome;
+    }
+
+    public ParseOutcome outcome() {
+        return outcome;
+    }
+
+    /**
+     * Ends the parse if the action of a handler method is {@link ParseAction#STOP}.
+     */
+    static void perform(ParseAction action) {
+        if (action == ParseAction.STOP) {
+            throw STOPPED;
+        }
+    }
+
+}
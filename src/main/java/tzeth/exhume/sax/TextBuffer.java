@@ -0,0 +1,71 @@
+package tzeth.exhume.sax;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+/**
+ * A growable character buffer shared by all elements whose text is being collected.
+ * <p>
+ * An element marks the current length when it starts, its text is appended after the mark, and
+ * the buffer is truncated back to the mark when the element ends. Text of an enclosing element
+ * that surrounds a nested element therefore stays contiguous.
+ */
+final class TextBuffer {
+    private char[] chars = new char[256];
+    private int length;
+
+    public int length() {
+        return length;
+    }
+
+    public char[] chars() {
+        return chars;
+    }
+
+    public void append(char[] ch, int start, int count) {
+        ensureCapacity(length + count);
+        System.arraycopy(ch, start, chars, length, count);
+        length += count;
+    }
+
+    public void append(char c) {
+        ensureCapacity(length + 1);
+        chars[length++] = c;
+    }
+
+    /**
+     * Makes room for {@code count} more characters, and returns the array to write them to,
+     * starting at {@link #length()}. Call {@link #setLength(int)} when done.
+     */
+    public char[] reserve(int count) {
+        ensureCapacity(length + count);
+        return chars;
+    }
+
+    public void setLength(int newLength) {
+        checkArgument(newLength >= 0 && newLength <= chars.length);
+        length = newLength;
+    }
+
+    public void truncate(int newLength) {
+        checkArgument(newLength >= 0 && newLength <= length);
+        length = newLength;
+    }
+
+    public String toString(int from) {
+        return new String(chars, from, length - from);
+    }
+
+    @Override
+    public String toString() {
+        return toString(0);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(capacity, 2 * chars.length));
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package tzeth.exhume.sax;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+import javax.annotation.Nullable;
+
+import tzeth.exhume.ExhumeException;
+
+/**
+ * Unmaps mapped buffers right away, instead of when they are garbage collected.
+ * <p>
+ * There is no public API for this. On Java 9 and later {@code sun.misc.Unsafe.invokeCleaner} is
+ * used, on Java 8 the cleaner of the buffer. If neither is accessible, unmapping is left to the
+ * garbage collector.
+ */
+final class Unmapper {
+    @Nullable
+    private static final MethodHandle UNMAP = findUnmap();
+
+    /**
+     * Unmaps the buffer. The buffer, and every view of it, must not be used afterwards.
+     */
+    public static void unmap(MappedByteBuffer buffer) {
+        if (UNMAP == null) {
+            return;
+        }
+        try {
+            UNMAP.invokeExact((ByteBuffer) buffer);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new ExhumeException(e);
+        }
+    }
+
+    public static boolean isSupported() {
+        return UNMAP != null;
+    }
+
+    @Nullable
+    private static MethodHandle findUnmap() {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodType type = MethodType.methodType(void.class, ByteBuffer.class);
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return lookup.unreflect(invokeCleaner).bindTo(theUnsafe.get(null)).asType(type);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Not Java 9 or later
+        }
+        try {
+            Method cleaner = Class.forName("java.nio.DirectByteBuffer").getMethod("cleaner");
+            cleaner.setAccessible(true);
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            clean.setAccessible(true);
+            MethodHandle cleanerOf = lookup.unreflect(cleaner);
+            MethodHandle cleanIt = lookup.unreflect(clean);
+            return MethodHandles.filterReturnValue(cleanerOf, cleanIt).asType(type);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private Unmapper() {/**/}
+
+}
@@ -0,0 +1,58 @@
+package tzeth.exhume.sax;
+
+import java.time.LocalDate;
+
+/**
+ * Remembers recently converted short values, so that a value that occurs over and over again,
+ * such as a currency code or a date, is created once rather than for every element.
+ * <p>
+ * The cache is direct-mapped on the hash of the characters: a new value replaces whatever was
+ * cached in its slot, which keeps a lookup to a hash and a comparison. A cache is used by one
+ * thread only; every session has its own.
+ */
+final class ValueCache {
+    static final int MAX_LENGTH = 32;
+    private static final int SLOTS = 256;
+
+    private final String[] strings = new String[SLOTS];
+    private final String[] dateKeys = new String[SLOTS];
+    private final LocalDate[] dates = new LocalDate[SLOTS];
+
+    public String string(char[] ch, int start, int length) {
+        if (length > MAX_LENGTH) {
+            return new String(ch, start, length);
+        }
+        int slot = slot(ch, start, length);
+        String cached = strings[slot];
+        if (cached != null && CharParsers.matches(cached, ch, start, length)) {
+            return cached;
+        }
+        String s = new String(ch, start, length);
+        strings[slot] = s;
+        return s;
+    }
+
+    public LocalDate localDate(char[] ch, int start, int length) {
+        if (length > MAX_LENGTH) {
+            return CharParsers.parseLocalDate(ch, start, length);
+        }
+        int slot = slot(ch, start, length);
+        String key = dateKeys[slot];
+        if (key != null && CharParsers.matches(key, ch, start, length)) {
+            return dates[slot];
+        }
+        LocalDate date = CharParsers.parseLocalDate(ch, start, length);
+        dateKeys[slot] = new String(ch, start, length);
+        dates[slot] = date;
+        return date;
+    }
+
+    private static int slot(char[] ch, int start, int length) {
+        int h = 0;
+        for (int i = start; i < start + length; ++i) {
+            h = 31 * h + ch[i];
+        }
+        return (h ^ (h >>> 16)) & (SLOTS - 1);
+    }
+
+}
@@ -0,0 +1,13 @@
+package tzeth.exhume.sax;
+
+/**
+ * Converts the text of an element to the type an {@link ElementEnd} method takes.
+ * <p>
+ * The text is passed as a range of the parser's character buffer, which is only valid during the
+ * call, so converters can parse it in place. Exceptions thrown by a converter are reported as
+ * {@link tzeth.exhume.ExhumeException}s.
+ */
+@FunctionalInterface
+public interface ValueConverter<T> {
+    public T convert(char[] chars, int start, int length);
+}
@@ -0,0 +1,106 @@
+package tzeth.exhume.sax;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.math.BigDecimal;
+import java.nio.CharBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * The conversions of element values to the types {@link ElementEnd} methods take: the built-in
+ * ones, enums, and the {@link ValueConverter}s registered by the user.
+ * <p>
+ * The conversion of a method is looked up once, when its handler is added to a plan, so
+ * converters must be registered before the handlers that use them.
+ */
+final class ValueConverters {
+    private static final ImmutableMap<Class<?>, ValueFactory> BUILT_IN = ImmutableMap
+            .<Class<?>, ValueFactory> builder()
+            .put(EndOfElement.class, EndOfElement::keepValue)
+            .put(String.class, EndOfElement::value)
+            .put(Integer.class, EndOfElement::valueAsInteger)
+            .put(int.class, EndOfElement::valueAsInteger)
+            .put(Long.class, EndOfElement::valueAsLong)
+            .put(long.class, EndOfElement::valueAsLong)
+            .put(Double.class, EndOfElement::valueAsDouble)
+            .put(double.class, EndOfElement::valueAsDouble)
+            .put(float.class, EndOfElement::floatValue)
+            .put(BigDecimal.class, EndOfElement::valueAsBigDecimal)
+            .put(Boolean.class, EndOfElement::valueAsBoolean)
+            .put(boolean.class, EndOfElement::valueAsBoolean)
+            .put(LocalDate.class, EndOfElement::valueAsLocalDate)
+            .put(Instant.class, converting((ch, start, length) -> Instant
+                    .parse(CharBuffer.wrap(ch, start, length))))
+            .put(OffsetDateTime.class, converting((ch, start, length) -> OffsetDateTime
+                    .parse(CharBuffer.wrap(ch, start, length))))
+            .put(UUID.class, converting(CharParsers::parseUuid))
+            .put(byte[].class, converting(CharParsers::parseBase64))
+            .build();
+
+    private final Map<Class<?>, ValueFactory> registered = new HashMap<>();
+
+    /**
+     * Makes methods that take the given type get their values from the given converter. A
+     * converter for a built-in type replaces the built-in conversion.
+     */
+    public <T> void register(Class<T> type, ValueConverter<? extends T> converter) {
+        checkArgument(!type.isPrimitive() && !type.equals(EndOfElement.class),
+                "There cannot be a converter for %s", type.getName());
+        registered.put(type, converting(checkNotNull(converter)));
+    }
+
+    /**
+     * Returns the conversion to the given type, or throws IllegalArgumentException if there is
+     * none.
+     */
+    public ValueFactory factory(Class<?> type) {
+        ValueFactory factory = registered.get(type);
+        if (factory == null) {
+            factory = BUILT_IN.get(type);
+        }
+        if (factory == null && type.isEnum()) {
+            factory = converting(enumConverter(type));
+        }
+        checkArgument(factory != null,
+                "An ElementEnd handler must take one of the following types as input: "
+                        + "EndOfElement, String, Integer, Long, Double, BigDecimal, Boolean, "
+                        + "LocalDate, Instant, OffsetDateTime, UUID, byte[] (base64), an enum, "
+                        + "int, long, double, float, boolean, a type with a registered "
+                        + "converter, or a batch of values; not %s", type.getName());
+        return factory;
+    }
+
+    private static ValueFactory converting(ValueConverter<?> converter) {
+        return eoe -> eoe.valueAs(converter);
+    }
+
+    private static ValueConverter<Enum<?>> enumConverter(Class<?> type) {
+        Enum<?>[] constants = (Enum<?>[]) type.getEnumConstants();
+        return (ch, start, length) -> {
+            for (Enum<?> e : constants) {
+                if (CharParsers.matches(e.name(), ch, start, length)) {
+                    return e;
+                }
+            }
+            throw new IllegalArgumentException("No constant of " + type.getName() + " named "
+                    + new String(ch, start, length));
+        };
+    }
+
+    /**
+     * Converts the value of an element.
+     */
+    @FunctionalInterface
+    static interface ValueFactory {
+        public Object of(EndOfElement eoe);
+    }
+
+}
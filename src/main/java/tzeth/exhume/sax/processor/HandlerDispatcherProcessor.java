@@ -0,0 +1,279 @@
+package tzeth.exhume.sax.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic.Kind;
+
+import tzeth.exhume.sax.ElementEnd;
+import tzeth.exhume.sax.ElementStart;
+import tzeth.exhume.sax.HandlerDispatcher;
+import tzeth.exhume.sax.ParseAction;
+import tzeth.exhume.sax.PathExpression;
+import tzeth.exhume.sax.RootPath;
+import tzeth.exhume.sax.StartOfElement;
+
+/**
+ * Generates a {@link HandlerDispatcher} for every class with {@link ElementStart} or
+ * {@link ElementEnd} methods, so that the methods are found and called without reflection.
+ * <p>
+ * The processor is not registered as a service; enable it explicitly, e.g. with
+ * {@code -processor tzeth.exhume.sax.processor.HandlerDispatcherProcessor}. Classes or methods
+ * that are private cannot be called from generated code, and are left to the reflective lookup;
+ * with the option {@code -Aexhume.verbose=true}, the processor notes every class it leaves.
+ */
+@SupportedAnnotationTypes({ "tzeth.exhume.sax.ElementStart", "tzeth.exhume.sax.ElementEnd" })
+@SupportedOptions(HandlerDispatcherProcessor.VERBOSE_OPTION)
+public final class HandlerDispatcherProcessor extends AbstractProcessor {
+    static final String VERBOSE_OPTION = "exhume.verbose";
+    private static final Set<String> PRIMITIVES = new HashSet<>(
+            Arrays.asList("int", "long", "double", "float", "boolean"));
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> handlerTypes = new LinkedHashSet<>();
+        for (Element e : roundEnv.getElementsAnnotatedWith(ElementStart.class)) {
+            handlerTypes.add((TypeElement) e.getEnclosingElement());
+        }
+        for (Element e : roundEnv.getElementsAnnotatedWith(ElementEnd.class)) {
+            handlerTypes.add((TypeElement) e.getEnclosingElement());
+        }
+        for (TypeElement type : handlerTypes) {
+            if (isCallable(type)) {
+                generate(type);
+            }
+        }
+        return false;
+    }
+
+    private boolean isCallable(TypeElement type) {
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            TypeElement t = (TypeElement) e;
+            if (t.getModifiers().contains(Modifier.PRIVATE)
+                    || t.getNestingKind() == NestingKind.LOCAL
+                    || t.getNestingKind() == NestingKind.ANONYMOUS) {
+                note(type, "Handler class is not accessible; it will be bound with reflection");
+                return false;
+            }
+        }
+        for (ExecutableElement m : handlerMethods(type)) {
+            if (m.getModifiers().contains(Modifier.PRIVATE)) {
+                note(m, "Handler method is private; its class will be bound with reflection");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type) {
+        String packageName = packageOf(type).getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String simpleName = (packageName.isEmpty()
+                ? binaryName
+                : binaryName.substring(packageName.length() + 1)).replace('$', '_')
+                + HandlerDispatcher.SUFFIX;
+        String typeName = type.getQualifiedName().toString();
+        RootPath rootPath = type.getAnnotation(RootPath.class);
+
+        StringBuilder sb = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+        sb.append("// Generated by ").append(getClass().getName()).append(" from ")
+                .append(typeName).append(". Do not edit.\n");
+        sb.append("public final class ").append(simpleName)
+                .append(" implements tzeth.exhume.sax.HandlerDispatcher {\n\n");
+        sb.append("    @Override\n");
+        sb.append("    @SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+        sb.append("    public void bind(tzeth.exhume.sax.HandlerBindings bindings) {\n");
+        for (ExecutableElement m : handlerMethods(type)) {
+            String expression = expressionOf(m, rootPath);
+            if (expression == null) {
+                return;
+            }
+            List<? extends VariableElement> parameters = m.getParameters();
+            if (parameters.size() != 1) {
+                error(m, "A handler method must take exactly one parameter as input");
+                return;
+            }
+            TypeMirror parameterType = processingEnv.getTypeUtils()
+                    .erasure(parameters.get(0).asType());
+            String receiver = m.getModifiers().contains(Modifier.STATIC)
+                    ? typeName
+                    : "((" + typeName + ") h)";
+            String call = receiver + "." + m.getSimpleName();
+            if (m.getAnnotation(ElementStart.class) != null) {
+                if (!parameterType.toString().equals(StartOfElement.class.getName())) {
+                    error(m, "An ElementStart handler must take exactly one parameter of type "
+                            + "StartOfElement as input");
+                    return;
+                }
+                String method = isControlling(m) ? "onStartControlling" : "onStart";
+                sb.append("        bindings.").append(method).append("(")
+                        .append(literal(expression)).append(", (h, soe) -> ")
+                        .append(body(m, call + "(soe)")).append(");\n");
+            } else if (isControlling(m)) {
+                if (isBatch(parameterType) || (parameterType.getKind().isPrimitive()
+                        && !PRIMITIVES.contains(parameterType.toString()))) {
+                    error(m, "A batched ElementEnd handler cannot return a ParseAction, and "
+                            + "one that takes a primitive must take an int, long, double, float "
+                            + "or boolean");
+                    return;
+                }
+                sb.append("        bindings.onEndControlling(").append(literal(expression))
+                        .append(", ").append(parameterType).append(".class, (h, v) -> ")
+                        .append(body(m, call + "((" + parameterType + ") v)")).append(");\n");
+            } else if (parameterType.getKind().isPrimitive()) {
+                String primitive = parameterType.toString();
+                if (!PRIMITIVES.contains(primitive)) {
+                    error(m, "An ElementEnd handler can take an int, long, double, float or "
+                            + "boolean, but not " + primitive);
+                    return;
+                }
+                sb.append("        bindings.onEnd")
+                        .append(Character.toUpperCase(primitive.charAt(0)))
+                        .append(primitive.substring(1)).append("(").append(literal(expression))
+                        .append(", (h, v) -> ").append(body(m, call + "(v)")).append(");\n");
+            } else if (isBatch(parameterType)) {
+                String valueType = batchValueType(parameters.get(0).asType());
+                if (valueType == null) {
+                    error(m, "A batched ElementEnd handler must take a List of a value type");
+                    return;
+                }
+                sb.append("        bindings.onEndBatch(").append(literal(expression))
+                        .append(", ").append(parameterType).append(".class, ")
+                        .append(valueType).append(".class, ")
+                        .append(m.getAnnotation(ElementEnd.class).batchSize())
+                        .append(", (h, v) -> ")
+                        .append(body(m, call + "((" + parameterType + ") v)")).append(");\n");
+            } else {
+                sb.append("        bindings.onEnd(").append(literal(expression)).append(", ")
+                        .append(parameterType).append(".class, (h, v) -> ")
+                        .append(body(m, call + "((" + parameterType + ") v)")).append(");\n");
+            }
+        }
+        sb.append("    }\n\n");
+        sb.append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try (Writer w = processingEnv.getFiler().createSourceFile(qualifiedName, type)
+                .openWriter()) {
+            w.write(sb.toString());
+        } catch (IOException e) {
+            error(type, "Could not write " + qualifiedName + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean isBatch(TypeMirror type) {
+        String name = type.toString();
+        return name.equals("java.util.List") || name.equals("int[]") || name.equals("long[]")
+                || name.equals("double[]");
+    }
+
+    /**
+     * Returns the type of the values in the batch, or null if it cannot be named.
+     */
+    private String batchValueType(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return ((ArrayType) type).getComponentType().toString();
+        }
+        List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+        if (arguments.size() != 1 || arguments.get(0).getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        return processingEnv.getTypeUtils().erasure(arguments.get(0)).toString();
+    }
+
+    private String expressionOf(ExecutableElement m, RootPath rootPath) {
+        ElementStart start = m.getAnnotation(ElementStart.class);
+        String leafPath = start != null
+                ? start.value()
+                : m.getAnnotation(ElementEnd.class).value();
+        try {
+            return PathExpression.of(rootPath != null ? rootPath.value() : "", leafPath).toString();
+        } catch (RuntimeException e) {
+            error(m, "Invalid path expression: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Set<ExecutableElement> handlerMethods(TypeElement type) {
+        Set<ExecutableElement> methods = new LinkedHashSet<>();
+        for (Element e : type.getEnclosedElements()) {
+            if (e.getKind() == ElementKind.METHOD && (e.getAnnotation(ElementStart.class) != null
+                    || e.getAnnotation(ElementEnd.class) != null)) {
+                methods.add((ExecutableElement) e);
+            }
+        }
+        return methods;
+    }
+
+    private static PackageElement packageOf(Element e) {
+        while (!(e instanceof PackageElement)) {
+            e = e.getEnclosingElement();
+        }
+        return (PackageElement) e;
+    }
+
+    /**
+     * Returns the lambda body for the call, which wraps checked exceptions if the method declares
+     * any.
+     */
+    private static String body(ExecutableElement m, String call) {
+        if (m.getThrownTypes().isEmpty()) {
+            return call;
+        }
+        return "{ try { " + (isControlling(m) ? "return " : "") + call + "; } "
+                + "catch (RuntimeException e) { throw e; } "
+                + "catch (Exception e) { throw new tzeth.exhume.ExhumeException(e); } }";
+    }
+
+    /**
+     * Returns true if the method returns a {@link ParseAction}.
+     */
+    private static boolean isControlling(ExecutableElement m) {
+        return m.getReturnType().toString().equals(ParseAction.class.getName());
+    }
+
+    private static String literal(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private void note(Element e, String message) {
+        if (Boolean.parseBoolean(processingEnv.getOptions().get(VERBOSE_OPTION))) {
+            processingEnv.getMessager().printMessage(Kind.NOTE, message, e);
+        }
+    }
+
+    private void error(Element e, String message) {
+        processingEnv.getMessager().printMessage(Kind.ERROR, message, e);
+    }
+
+}
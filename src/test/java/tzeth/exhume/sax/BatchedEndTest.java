@@ -0,0 +1,88 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public final class BatchedEndTest {
+    private static final String XML = "<Items>"
+            + "<Item><Price>1.5</Price><Quantity>1</Quantity></Item>"
+            + "<Item><Price>2.5</Price><Quantity>2</Quantity></Item>"
+            + "<Item><Price>3.5</Price><Quantity>3</Quantity></Item>"
+            + "<Item><Price>4.5</Price><Quantity>4</Quantity></Item>"
+            + "<Item><Price>5.5</Price><Quantity>5</Quantity></Item>"
+            + "</Items>";
+
+    @Test
+    public void valuesArriveInBatchesWithTheRestAtTheEnd() throws SAXException {
+        for (Engine engine : Engine.values()) {
+            for (boolean pipelined : new boolean[] { false, true }) {
+                Batches handler = new Batches();
+                ExhumeSaxParser parser = new ExhumeSaxParser(handler);
+                parser.setEngine(engine);
+                parser.setPipelined(pipelined);
+                parser.parseXml(XML);
+
+                assertEquals(Arrays.asList(
+                        Arrays.asList(new BigDecimal("1.5"), new BigDecimal("2.5")),
+                        Arrays.asList(new BigDecimal("3.5"), new BigDecimal("4.5")),
+                        Arrays.asList(new BigDecimal("5.5"))), handler.prices);
+                assertEquals(2, handler.quantities.size());
+                assertArrayEquals(new long[] { 1, 2, 3, 4 }, handler.quantities.get(0));
+                assertArrayEquals(new long[] { 5 }, handler.quantities.get(1));
+            }
+        }
+    }
+
+    @Test
+    public void reflectiveDispatcherBindsBatches() throws SAXException {
+        ReflectiveBatches handler = new ReflectiveBatches();
+        new ExhumeSaxParser(handler).parseXml(XML);
+
+        assertEquals(1, handler.quantities.size());
+        assertArrayEquals(new int[] { 1, 2, 3, 4, 5 }, handler.quantities.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedBatchTypeIsRejected() {
+        new ExhumeSaxParser(new InvalidBatch());
+    }
+
+    static class Batches {
+        final List<List<BigDecimal>> prices = new ArrayList<>();
+        final List<long[]> quantities = new ArrayList<>();
+
+        @ElementEnd(value = "/Items/Item/Price", batchSize = 2)
+        void prices(List<BigDecimal> batch) {
+            prices.add(batch);
+        }
+
+        @ElementEnd(value = "/Items/Item/Quantity", batchSize = 4)
+        void quantities(long[] batch) {
+            quantities.add(batch);
+        }
+    }
+
+    private static class ReflectiveBatches {
+        final List<int[]> quantities = new ArrayList<>();
+
+        @ElementEnd("/Items/Item/Quantity")
+        private void quantities(int[] batch) {
+            quantities.add(batch);
+        }
+    }
+
+    private static class InvalidBatch {
+
+        @ElementEnd("/Items/Item/Quantity")
+        private void quantities(short[] batch) {/**/}
+    }
+
+}
@@ -0,0 +1,118 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public final class CharParsersTest {
+
+    @Test
+    public void integersMatchTheJdk() {
+        for (String s : new String[] { "0", "-0", "+7", "42", "-123456789", "2147483647",
+                "-2147483648", "00012", "١٢" }) {
+            assertEquals(s, Integer.parseInt(s), CharParsers.parseInt(chars(s), 2, s.length()));
+        }
+        for (String s : new String[] { "9223372036854775807", "-9223372036854775808",
+                "123456789012345678" }) {
+            assertEquals(s, Long.parseLong(s), CharParsers.parseLong(chars(s), 2, s.length()));
+        }
+    }
+
+    @Test
+    public void invalidIntegersFailLikeTheJdk() {
+        for (String s : new String[] { "", "-", "+", "1.5", "2147483648", " 1", "x" }) {
+            try {
+                CharParsers.parseInt(chars(s), 2, s.length());
+                fail(s);
+            } catch (NumberFormatException expected) {/**/}
+        }
+    }
+
+    @Test
+    public void decimalsMatchTheJdk() {
+        for (String s : new String[] { "0", "-0", "1.5", "-2.25", ".5", "5.", "0.1", "0.3",
+                "123456.789012345", "9007199254740993", "1e10", "1234567890.1234567",
+                "3.4028235E38", "NaN", "-Infinity", "0.000001" }) {
+            assertEquals(s, Double.doubleToLongBits(Double.parseDouble(s)),
+                    Double.doubleToLongBits(CharParsers.parseDouble(chars(s), 2, s.length())));
+            assertEquals(s, Float.floatToIntBits(Float.parseFloat(s)),
+                    Float.floatToIntBits(CharParsers.parseFloat(chars(s), 2, s.length())));
+        }
+        for (String s : new String[] { "", ".", "1.2.3", "-" }) {
+            try {
+                CharParsers.parseDouble(chars(s), 2, s.length());
+                fail(s);
+            } catch (NumberFormatException expected) {/**/}
+        }
+    }
+
+    @Test
+    public void dates() {
+        assertEquals(LocalDate.of(2017, 3, 14),
+                CharParsers.parseLocalDate(chars("2017-03-14"), 2, 10));
+        assertEquals(LocalDate.parse("+12017-03-14"),
+                CharParsers.parseLocalDate(chars("+12017-03-14"), 2, 12));
+        for (String s : new String[] { "2017-02-30", "2017-13-01", "2017-3-14", "17-03-14x" }) {
+            try {
+                CharParsers.parseLocalDate(chars(s), 2, s.length());
+                fail(s);
+            } catch (DateTimeException expected) {/**/}
+        }
+    }
+
+    @Test
+    public void booleans() {
+        assertEquals(true, CharParsers.parseBoolean(chars("true"), 2, 4));
+        assertEquals(true, CharParsers.parseBoolean(chars("1"), 2, 1));
+        assertEquals(false, CharParsers.parseBoolean(chars("false"), 2, 5));
+        assertEquals(false, CharParsers.parseBoolean(chars("0"), 2, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBoolean() {
+        CharParsers.parseBoolean(chars("yes"), 2, 3);
+    }
+
+    @Test
+    public void uuidsMatchTheJdk() {
+        for (String s : new String[] { "123e4567-e89b-12d3-a456-426655440000",
+                "FFFFFFFF-FFFF-FFFF-FFFF-FFFFFFFFFFFF", "00000000-0000-0000-0000-000000000000",
+                "1-2-3-4-5" }) {
+            assertEquals(s, UUID.fromString(s), CharParsers.parseUuid(chars(s), 2, s.length()));
+        }
+    }
+
+    @Test
+    public void base64MatchesTheJdk() {
+        for (String s : new String[] { "", "QQ==", "QUI=", "QUJD", "aGVsbG8gd29ybGQ=",
+                "/+/+AAEC" }) {
+            assertArrayEquals(Base64.getDecoder().decode(s),
+                    CharParsers.parseBase64(chars(s), 2, s.length()));
+        }
+        String broken = "aGVs\n bG8g\r\nd29y\tbGQ=";
+        assertArrayEquals("hello world".getBytes(StandardCharsets.US_ASCII),
+                CharParsers.parseBase64(chars(broken), 2, broken.length()));
+        for (String s : new String[] { "Q", "QQ=", "QQ=A", "Q===", "QU*D" }) {
+            try {
+                CharParsers.parseBase64(chars(s), 2, s.length());
+                fail(s);
+            } catch (IllegalArgumentException expected) {/**/}
+        }
+    }
+
+    /**
+     * Returns the characters of the string at offset 2 of a larger array.
+     */
+    private static char[] chars(String s) {
+        return ("<>" + s + "</>").toCharArray();
+    }
+
+}
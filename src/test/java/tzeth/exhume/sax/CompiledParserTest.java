@@ -0,0 +1,94 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public final class CompiledParserTest {
+
+    @Test
+    public void everyParseGetsItsOwnHandlers() throws SAXException {
+        CompiledParser parser = CompiledParser.builder()
+                .handler(PriceSummer.class, PriceSummer::new)
+                .build();
+
+        ParseSession first = parser.parseXml(prices(1, 2));
+        ParseSession second = parser.parseXml(prices(3, 4, 5));
+
+        assertEquals(3, first.handler(PriceSummer.class).total);
+        assertEquals(12, second.handler(PriceSummer.class).total);
+        assertNotSame(first.handler(PriceSummer.class), second.handler(PriceSummer.class));
+    }
+
+    @Test
+    public void parserCanBeSharedByThreads() throws Exception {
+        CompiledParser parser = CompiledParser.builder()
+                .handler(PriceSummer.class, PriceSummer::new)
+                .handler(PriceCounter.class, PriceCounter::new)
+                .build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<ParseSession>> results = new ArrayList<>();
+            for (int n = 1; n <= 50; ++n) {
+                int[] values = new int[n];
+                for (int i = 0; i < n; ++i) {
+                    values[i] = i + 1;
+                }
+                String xml = prices(values);
+                results.add(executor.submit(() -> parser.parseXml(xml)));
+            }
+            for (int n = 1; n <= 50; ++n) {
+                ParseSession session = results.get(n - 1).get();
+                assertEquals(n * (n + 1) / 2, session.handler(PriceSummer.class).total);
+                assertEquals(n, session.handler(PriceCounter.class).count);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void sessionCannotBeReused() throws SAXException {
+        CompiledParser parser = CompiledParser.builder()
+                .handler(PriceSummer.class, PriceSummer::new)
+                .build();
+        ParseSession session = parser.newSession();
+        session.parseXml(prices(1));
+        session.parseXml(prices(1));
+    }
+
+    private static String prices(int... values) {
+        StringBuilder sb = new StringBuilder("<Prices>");
+        for (int v : values) {
+            sb.append("<Price>").append(v).append("</Price>");
+        }
+        return sb.append("</Prices>").toString();
+    }
+
+    static class PriceSummer {
+        int total;
+
+        @ElementEnd("/Prices/Price")
+        void price(Integer price) {
+            total += price;
+        }
+    }
+
+    static class PriceCounter {
+        int count;
+
+        @ElementStart("Price")
+        void price(StartOfElement soe) {
+            ++count;
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public final class EarlyTerminationTest {
+    private static final int BOOKS = 5000;
+
+    @Test
+    public void handlerStopsTheParse() throws SAXException {
+        for (Engine engine : Engine.values()) {
+            for (boolean pipelined : new boolean[] { false, true }) {
+                HeaderReader handler = new HeaderReader();
+                ExhumeSaxParser parser = new ExhumeSaxParser(handler);
+                parser.setEngine(engine);
+                parser.setPipelined(pipelined);
+                assertEquals(ParseOutcome.STOPPED, parser.parseXml(library()));
+                assertEquals("Main", handler.name);
+                assertEquals(0, handler.books);
+                assertEquals(1, handler.batches.size());
+                assertEquals(7, handler.batches.get(0)[0]);
+            }
+        }
+    }
+
+    @Test
+    public void reflectiveStartHandlerStopsTheParse() throws SAXException {
+        FirstBook handler = new FirstBook();
+        ExhumeSaxParser parser = new ExhumeSaxParser(handler);
+        assertEquals(ParseOutcome.STOPPED, parser.parseXml(library()));
+        assertEquals(1, handler.books);
+    }
+
+    @Test
+    public void completedParse() throws SAXException {
+        ExhumeSaxParser parser = new ExhumeSaxParser(new FirstBook());
+        assertEquals(ParseOutcome.COMPLETED, parser.parseXml("<Library/>"));
+    }
+
+    @Test
+    public void cancelEndsTheParse() throws SAXException {
+        for (Engine engine : Engine.values()) {
+            CancellingCounter handler = new CancellingCounter();
+            ExhumeSaxParser parser = new ExhumeSaxParser(handler);
+            handler.parser = parser;
+            parser.setEngine(engine);
+            assertEquals(ParseOutcome.CANCELLED, parser.parseXml(library()));
+            assertTrue(handler.books < BOOKS);
+        }
+    }
+
+    @Test
+    public void cancelBeforeTheParseEndsTheNextParse() throws SAXException {
+        for (Engine engine : Engine.values()) {
+            FirstBook handler = new FirstBook();
+            ExhumeSaxParser parser = new ExhumeSaxParser(handler);
+            parser.setEngine(engine);
+            parser.cancel();
+            assertEquals(ParseOutcome.CANCELLED, parser.parseXml(library()));
+            assertEquals(0, handler.books);
+            assertEquals(ParseOutcome.STOPPED, parser.parseXml(library()));
+            assertEquals(1, handler.books);
+        }
+    }
+
+    @Test
+    public void timeLimitEndsTheParse() throws SAXException {
+        SlowCounter handler = new SlowCounter();
+        CompiledParser parser = CompiledParser.builder()
+                .handler(SlowCounter.class, () -> handler)
+                .timeLimit(Duration.ofMillis(20))
+                .build();
+        assertEquals(ParseOutcome.TIMED_OUT, parser.parseXml(library()).outcome());
+        assertTrue(handler.books < BOOKS);
+    }
+
+    private static String library() {
+        StringBuilder xml = new StringBuilder("<Library><Header><Id>7</Id><Name>Main</Name></Header>");
+        for (int n = 0; n < BOOKS; ++n) {
+            xml.append("<Book><Price>").append(n).append("</Price></Book>");
+        }
+        return xml.append("</Library>").toString();
+    }
+
+    @RootPath("/Library")
+    static class HeaderReader {
+        String name;
+        int books;
+        final List<int[]> batches = new ArrayList<>();
+
+        @ElementEnd("Header/Name")
+        ParseAction name(String name) {
+            this.name = name;
+            return ParseAction.STOP;
+        }
+
+        @ElementStart("Book")
+        void book(StartOfElement soe) {
+            ++books;
+        }
+
+        @ElementEnd("Header/Id")
+        void ids(int[] batch) {
+            batches.add(batch);
+        }
+    }
+
+    private static class FirstBook {
+        int books;
+
+        @ElementStart("/Library/Book")
+        private ParseAction book(StartOfElement soe) {
+            ++books;
+            return ParseAction.STOP;
+        }
+    }
+
+    static class CancellingCounter {
+        ExhumeSaxParser parser;
+        int books;
+
+        @ElementStart("/Library/Book")
+        void book(StartOfElement soe) {
+            if (++books == 10) {
+                parser.cancel();
+            }
+        }
+    }
+
+    static class SlowCounter {
+        int books;
+
+        @ElementStart("/Library/Book")
+        void book(StartOfElement soe) throws InterruptedException {
+            ++books;
+            Thread.sleep(1);
+        }
+    }
+
+}
@@ -0,0 +1,291 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public final class EngineTest {
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<!-- Inventory -->\n"
+            + "<Inventory>\n"
+            + "  <Books>\n"
+            + "    <Book onSale=\"false\" id=\"b&amp;1\">\n"
+            + "      <Title>East of &lt;Eden&gt;</Title>\n"
+            + "      <Price>15</Price>\n"
+            + "      <?pi ignored?>\n"
+            + "      <Note>mixed <b>bold</b> and <![CDATA[<raw> & cdata]]> text</Note>\n"
+            + "    </Book>\n"
+            + "    <Book onSale=\"true\" id=\"b2\">\n"
+            + "      <Title>Ghost Story \u00e5\u00e4\u00f6</Title>\n"
+            + "      <Price>12</Price>\n"
+            + "      <Note/>\n"
+            + "    </Book>\n"
+            + "  </Books>\n"
+            + "</Inventory>\n";
+
+    @Test
+    public void staxEngineDispatchesLikeSax() throws SAXException, IOException {
+        List<String> expected = events(Engine.SAX);
+        assertEquals(expected, events(Engine.STAX));
+    }
+
+    @Test
+    public void nativeEngineDispatchesLikeSax() throws SAXException, IOException {
+        List<String> expected = events(Engine.SAX);
+        assertEquals(expected, events(Engine.NATIVE));
+    }
+
+    @Test
+    public void nativeEngineHandlesInputSplitAnywhere() throws SAXException, IOException {
+        String xml = "<Inventory>\r\n<Books><Book id=\"a&#x9;b\r\nc\">"
+                + "<Title>line\r\nbreak &#65;&#x1F600; \ud83d\ude00 \u00e5</Title>"
+                + "<Note><![CDATA[x\r\ny]]></Note></Book></Books></Inventory>";
+        List<String> expected = parse(Engine.SAX, new ByteArrayInputStream(bytes(xml)));
+        assertEquals(expected, parse(Engine.NATIVE, new OneByteAtATime(bytes(xml))));
+        assertEquals("start /Inventory/Books/Book onSale=null id=a\tb c", expected.get(0));
+        assertEquals("title line\nbreak A\ud83d\ude00 \ud83d\ude00 \u00e5", expected.get(1));
+        assertEquals("note x\ny", expected.get(2));
+    }
+
+    @Test
+    public void enginesFindAttributesByName() throws SAXException {
+        String xml = "<Inventory><Books><Book id=\"1\" prix\u00e9=\"5\" \u540d=\"x\"/>"
+                + "</Books></Inventory>";
+        for (Engine engine : Engine.values()) {
+            ParseSession session = CompiledParser.builder()
+                    .handler(AttributeReader.class, AttributeReader::new)
+                    .engine(engine)
+                    .build()
+                    .parseXml(xml);
+            assertEquals(engine.name(), Arrays.asList("1", "5", "x", null, null),
+                    session.handler(AttributeReader.class).values);
+        }
+    }
+
+    @Test
+    public void nativeEngineFindsAttributesByNamespace() throws SAXException {
+        String xml = "<Inventory xmlns:x=\"urn:x\"><Books>"
+                + "<Book x:id=\"1\" id=\"2\" xml:lang=\"en\"/>"
+                + "<Book xmlns:x=\"urn:y\" x:id=\"3\"/>"
+                + "<Book x:id=\"4\"/>"
+                + "</Books></Inventory>";
+        ParseSession session = CompiledParser.builder()
+                .handler(NamespacedAttributeReader.class, NamespacedAttributeReader::new)
+                .engine(Engine.NATIVE)
+                .build()
+                .parseXml(xml);
+        assertEquals(Arrays.asList("1", "2", "en", null, null, null, null, "3", "4", null, null,
+                null), session.handler(NamespacedAttributeReader.class).values);
+    }
+
+    @Test
+    public void mappedFileDispatchesLikeStream() throws SAXException, IOException {
+        File file = File.createTempFile("inventory", ".xml");
+        try {
+            Files.write(file.toPath(), bytes(XML));
+            List<String> expected = events(Engine.SAX);
+            for (Engine engine : Engine.values()) {
+                List<String> events = new ArrayList<>();
+                ExhumeSaxParser p = new ExhumeSaxParser(new EventRecorder(events));
+                p.setEngine(engine);
+                p.parseMappedFile(file);
+                assertEquals(expected, events);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = SAXException.class)
+    public void nativeEngineRejectsDoctype() throws SAXException, IOException {
+        parse(Engine.NATIVE, new ByteArrayInputStream(
+                bytes("<!DOCTYPE Inventory [<!ENTITY e 'x'>]><Inventory/>")));
+    }
+
+    @Test(expected = SAXException.class)
+    public void nativeEngineRejectsMismatchedEndTag() throws SAXException, IOException {
+        parse(Engine.NATIVE, new ByteArrayInputStream(bytes("<Inventory><Books></Book>")));
+    }
+
+    @Test(expected = SAXException.class)
+    public void nativeEngineRejectsMismatchedEndTagInSkippedSubtree()
+            throws SAXException, IOException {
+        parse(Engine.NATIVE, new ByteArrayInputStream(
+                bytes("<Inventory><Stock><Shelf><Item></Shelf></Item></Stock></Inventory>")));
+    }
+
+    @Test
+    public void skippedSubtreesAreNotInterned() throws SAXException, IOException {
+        String xml = "<Inventory><Stock><Shelf a=\"1\"><Item>x</Item><Empty/></Shelf></Stock>"
+                + "<Books><Book id=\"b1\"><Extra><Title>skipped</Title></Extra>"
+                + "<Title>Kept</Title></Book></Books></Inventory>";
+        for (Engine engine : Engine.values()) {
+            ParseSession session = CompiledParser.builder()
+                    .handler(EventRecorder.class, () -> new EventRecorder(new ArrayList<>()))
+                    .engine(engine)
+                    .build()
+                    .parseXml(xml);
+            assertEquals(engine.name(), 2, session.handler(EventRecorder.class).events.size());
+            assertEquals("title Kept", session.handler(EventRecorder.class).events.get(1));
+            assertTrue(engine.name(), session.names().find("Shelf") < 0);
+            assertTrue(engine.name(), session.names().find("Item") < 0);
+        }
+    }
+
+    @Test(expected = SAXException.class)
+    public void nativeEngineRejectsOverlongUtf8() throws SAXException, IOException {
+        // C0 AF is an overlong encoding of '/'
+        parse(Engine.NATIVE, titleWithBytes((byte) 0xC0, (byte) 0xAF));
+    }
+
+    @Test(expected = SAXException.class)
+    public void nativeEngineRejectsEncodedSurrogate() throws SAXException, IOException {
+        // ED A0 80 is the surrogate U+D800
+        parse(Engine.NATIVE, titleWithBytes((byte) 0xED, (byte) 0xA0, (byte) 0x80));
+    }
+
+    @Test(expected = SAXException.class)
+    public void nativeEngineRejectsInvalidAttributeValue() throws SAXException, IOException {
+        parse(Engine.NATIVE, new ByteArrayInputStream(
+                bytes("<Inventory><Books><Book id=\"a&bogus;\"/></Books></Inventory>")));
+    }
+
+    @Test(expected = SAXException.class)
+    public void nativeEngineRejectsUnclosedElement() throws SAXException, IOException {
+        parse(Engine.NATIVE, new ByteArrayInputStream(bytes("<Inventory><Books>")));
+    }
+
+    @Test
+    public void saxEvents() throws SAXException, IOException {
+        List<String> events = events(Engine.SAX);
+        assertEquals("start /Inventory/Books/Book onSale=false id=b&1", events.get(0));
+        assertEquals("title East of <Eden>", events.get(1));
+        assertEquals("note mixed  and <raw> & cdata text", events.get(3));
+        assertEquals("title Ghost Story \u00e5\u00e4\u00f6", events.get(5));
+        assertEquals("note ", events.get(7));
+    }
+
+    private static List<String> events(Engine engine) throws SAXException, IOException {
+        List<String> events = new ArrayList<>();
+        ExhumeSaxParser p = new ExhumeSaxParser(new EventRecorder(events));
+        p.setEngine(engine);
+        p.parseStream(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)));
+
+        CompiledParser compiled = CompiledParser.builder()
+                .handler(EventRecorder.class, () -> new EventRecorder(new ArrayList<>()))
+                .engine(engine)
+                .build();
+        List<String> fromXml = compiled.parseXml(XML.substring(XML.indexOf("?>") + 2))
+                .handler(EventRecorder.class).events;
+        assertEquals(events, fromXml);
+        return events;
+    }
+
+    private static List<String> parse(Engine engine, InputStream stream)
+            throws SAXException, IOException {
+        List<String> events = new ArrayList<>();
+        ExhumeSaxParser p = new ExhumeSaxParser(new EventRecorder(events));
+        p.setEngine(engine);
+        p.parseStream(stream);
+        return events;
+    }
+
+    private static InputStream titleWithBytes(byte... title) {
+        byte[] start = bytes("<Inventory><Books><Book><Title>");
+        byte[] end = bytes("</Title></Book></Books></Inventory>");
+        byte[] xml = Arrays.copyOf(start, start.length + title.length + end.length);
+        System.arraycopy(title, 0, xml, start.length, title.length);
+        System.arraycopy(end, 0, xml, start.length + title.length, end.length);
+        return new ByteArrayInputStream(xml);
+    }
+
+    private static byte[] bytes(String xml) {
+        return xml.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class OneByteAtATime extends InputStream {
+        private final ByteArrayInputStream bytes;
+
+        OneByteAtATime(byte[] bytes) {
+            this.bytes = new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public int read() {
+            return bytes.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return bytes.read(b, off, Math.min(len, 1));
+        }
+    }
+
+    static class AttributeReader {
+        final List<String> values = new ArrayList<>();
+
+        @ElementStart("/Inventory/Books/Book")
+        void book(StartOfElement soe) {
+            for (String name : new String[] { "id", "prix\u00e9", "\u540d", "i", "idx" }) {
+                values.add(soe.attributeValue(name));
+            }
+        }
+    }
+
+    static class NamespacedAttributeReader {
+        final List<String> values = new ArrayList<>();
+
+        @ElementStart("/Inventory/Books/Book")
+        void book(StartOfElement soe) {
+            values.add(soe.attributeValue("urn:x", "id"));
+            values.add(soe.attributeValue("", "id"));
+            values.add(soe.attributeValue(XMLConstants.XML_NS_URI, "lang"));
+            values.add(soe.attributeValue("urn:y", "id"));
+        }
+    }
+
+    @RootPath("/Inventory/Books/Book")
+    static class EventRecorder {
+        final List<String> events;
+
+        EventRecorder(List<String> events) {
+            this.events = events;
+        }
+
+        @ElementStart("")
+        void book(StartOfElement soe) {
+            events.add("start " + soe.path() + " onSale=" + soe.attributeValue("onSale") + " id="
+                    + soe.attributeValue("id"));
+        }
+
+        @ElementEnd("Title")
+        void title(String value) {
+            events.add("title " + value);
+        }
+
+        @ElementEnd("Price")
+        void price(Integer value) {
+            events.add("price " + value);
+        }
+
+        @ElementEnd("Note")
+        void note(EndOfElement eoe) {
+            events.add("note " + eoe.value());
+        }
+    }
+
+}
@@ -101,6 +101,70 @@ public final class ExhumeSaxParserTest {
         }
     }
 
+    @Test
+    public void pricesMatchedByWildcards() {
+        String xml = buildInventoryXml();
+        WildcardPriceGatherer g = new WildcardPriceGatherer();
+        ExhumeSaxParser p = new ExhumeSaxParser(g);
+
+        try {
+            p.parseXml(xml);
+        } catch (SAXException e) {
+            fail(e.getMessage());
+        }
+
+        assertEquals(15 + 12 + 8 + 4 + 22, g.totalPrice);
+        assertEquals(8 + 4 + 22, g.dvdPrice);
+    }
+
+    private static class WildcardPriceGatherer {
+        public int totalPrice;
+        public int dvdPrice;
+
+        @ElementEnd("/Inventory/**/Price")
+        public void price(Integer price) {
+            totalPrice += price;
+        }
+
+        @ElementEnd("DVDs/*/Price")
+        public void dvdPrice(Integer price) {
+            dvdPrice += price;
+        }
+    }
+
+    @Test
+    public void pricesMatchedByAttributePredicates() throws SAXException {
+        for (Engine engine : Engine.values()) {
+            OnSalePriceGatherer g = new OnSalePriceGatherer();
+            ExhumeSaxParser p = new ExhumeSaxParser(g);
+            p.setEngine(engine);
+            p.parseXml(buildInventoryXml());
+
+            assertEquals(engine.name(), 8 + 4, g.totalPrice);
+            assertEquals(engine.name(), Arrays.asList("Interstellar"), g.fullPriceTitles);
+        }
+    }
+
+    static class OnSalePriceGatherer {
+        public int totalPrice;
+        public final List<String> fullPriceTitles = new ArrayList<>();
+
+        @ElementEnd("/Inventory/**/Book[@onSale='true']/Price")
+        public void bookPrice(int price) {
+            totalPrice += price;
+        }
+
+        @ElementEnd("DVD[@onSale='true']/Price")
+        public void dvdPrice(int price) {
+            totalPrice += price;
+        }
+
+        @ElementEnd("DVDs/DVD[@onSale=\"false\"]/Title")
+        public void fullPriceTitle(String title) {
+            fullPriceTitles.add(title);
+        }
+    }
+
     @Test
     public void dvdsOnSale() {
         String xml = buildInventoryXml();
@@ -225,6 +289,68 @@ public final class ExhumeSaxParserTest {
         }
     }
 
+    @Test
+    public void pathOfElement() {
+        String xml = buildInventoryXml();
+        PathRecorder r = new PathRecorder();
+        ExhumeSaxParser p = new ExhumeSaxParser(r);
+
+        try {
+            p.parseXml(xml);
+        } catch (SAXException e) {
+            fail(e.getMessage());
+        }
+
+        List<String> expectedPaths = Arrays.asList(
+                "/Inventory/DVDs/DVD", "/Inventory/DVDs/DVD/Price",
+                "/Inventory/DVDs/DVD", "/Inventory/DVDs/DVD/Price",
+                "/Inventory/DVDs/DVD", "/Inventory/DVDs/DVD/Price");
+        assertEquals(expectedPaths, r.paths);
+    }
+
+    private static class PathRecorder {
+        public final List<String> paths = new ArrayList<>();
+
+        @ElementStart("DVD")
+        public void start(StartOfElement soe) {
+            this.paths.add(soe.path());
+        }
+
+        @ElementEnd("DVD/Price")
+        public void end(EndOfElement eoe) {
+            this.paths.add(eoe.path());
+        }
+    }
+
+    @Test
+    public void textOfNestedElementsIsKeptApart() {
+        String xml = "<a>x<b>y<c>ignored</c></b>z<b>w</b></a>";
+        MixedContentGatherer g = new MixedContentGatherer();
+        ExhumeSaxParser p = new ExhumeSaxParser(g);
+
+        try {
+            p.parseXml(xml);
+        } catch (SAXException e) {
+            fail(e.getMessage());
+        }
+
+        assertEquals(Arrays.asList("y", "w", "xz"), g.values);
+    }
+
+    private static class MixedContentGatherer {
+        public final List<String> values = new ArrayList<>();
+
+        @ElementEnd("/a")
+        public void a(String value) {
+            this.values.add(value);
+        }
+
+        @ElementEnd("/a/b")
+        public void b(String value) {
+            this.values.add(value);
+        }
+    }
+
     @Test(expected = ExhumeException.class)
     public void leafAppendedToRootPathCannotBeAbsolute() {
         // TODO: This test really belongs in a PathExpression unit test.
@@ -0,0 +1,62 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public final class HandlerDispatchersTest {
+
+    @Test
+    public void generatedName() {
+        assertEquals("tzeth.exhume.sax.HandlerDispatchersTest_Gatherer_ExhumeDispatcher",
+                HandlerDispatchers.generatedName(Gatherer.class));
+    }
+
+    @Test
+    public void generatedDispatcherIsUsedWhenPresent() throws SAXException {
+        HandlerDispatcher dispatcher = HandlerDispatchers.of(Gatherer.class);
+        assertEquals(HandlerDispatchers.generatedName(Gatherer.class),
+                dispatcher.getClass().getName());
+
+        Gatherer g = new Gatherer();
+        new ExhumeSaxParser(g).parseXml("<a><b x=\"1\">2</b><b x=\"3\">4</b></a>");
+        assertEquals(Arrays.asList("1", "2", "3", "4"), g.values);
+    }
+
+    @Test
+    public void privateHandlerClassesAreBoundWithReflection() {
+        HandlerDispatcher dispatcher = HandlerDispatchers.of(PrivateGatherer.class);
+        assertNotEquals(HandlerDispatchers.generatedName(PrivateGatherer.class),
+                dispatcher.getClass().getName());
+    }
+
+    @RootPath("/a")
+    static class Gatherer {
+        final List<String> values = new ArrayList<>();
+
+        @ElementStart("b")
+        void start(StartOfElement soe) {
+            values.add(soe.attributeValue("x"));
+        }
+
+        @ElementEnd("b")
+        void end(Integer value) {
+            values.add(value.toString());
+        }
+    }
+
+    private static class PrivateGatherer {
+
+        @ElementEnd("b")
+        public void end(String value) {
+            // Nothing to do
+        }
+    }
+
+}
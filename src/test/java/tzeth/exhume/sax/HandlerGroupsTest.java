@@ -0,0 +1,133 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public final class HandlerGroupsTest {
+    private static final int PRICES = 50_000;
+
+    @Test
+    public void groupsConsumeTheSameParseOnTheirOwnThreads() throws Exception {
+        PriceSummer fast = new PriceSummer(false);
+        PriceSummer slow = new PriceSummer(true);
+        PriceSummer inline = new PriceSummer(false);
+        ExhumeSaxParser parser = new ExhumeSaxParser();
+        parser.registerHandler(fast, "fast");
+        parser.registerHandler(slow, "slow");
+        parser.registerHandler(inline);
+
+        AtomicLong maxLag = new AtomicLong();
+        Thread monitor = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                maxLag.accumulateAndGet(parser.groupLag("slow"), Math::max);
+            }
+        });
+        monitor.start();
+        try {
+            parser.parseXml(prices());
+        } finally {
+            monitor.interrupt();
+            monitor.join();
+        }
+
+        long expected = (long) PRICES * (PRICES - 1) / 2;
+        assertEquals(expected, fast.total);
+        assertEquals(expected, slow.total);
+        assertEquals(expected, inline.total);
+        assertNotEquals(fast.thread, slow.thread);
+        assertEquals(Thread.currentThread().getName(), inline.thread);
+        assertTrue(maxLag.get() > 0);
+        assertEquals(0, parser.groupLag("slow"));
+    }
+
+    @Test
+    public void stopInOneGroupLetsTheOthersFinish() throws SAXException {
+        for (boolean stopFirst : new boolean[] { true, false }) {
+            PriceCounter counter = new PriceCounter();
+            PriceBatches batched = new PriceBatches();
+            ExhumeSaxParser parser = new ExhumeSaxParser(counter);
+            if (stopFirst) {
+                parser.registerHandler(new ThirdPriceStopper(), "stop");
+            }
+            parser.registerHandler(batched, "batched");
+            if (!stopFirst) {
+                parser.registerHandler(new ThirdPriceStopper(), "stop");
+            }
+            assertEquals(ParseOutcome.STOPPED, parser.parseXml(prices()));
+            assertTrue(batched.count > 0);
+            // The element on which the parse stopped may not have reached the group
+            assertTrue(counter.count - batched.count <= 1);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lagOfUnknownGroup() throws SAXException {
+        ParseSession session = CompiledParser.builder()
+                .handler(PriceSummer.class, () -> new PriceSummer(false), "fast")
+                .build()
+                .parseXml("<Prices><Price>1</Price></Prices>");
+        session.groupLag("slow");
+    }
+
+    private static String prices() {
+        StringBuilder sb = new StringBuilder("<Prices>");
+        for (int n = 0; n < PRICES; ++n) {
+            sb.append("<Price>").append(n).append("</Price>");
+        }
+        return sb.append("</Prices>").toString();
+    }
+
+    static class PriceCounter {
+        int count;
+
+        @ElementEnd("/Prices/Price")
+        void price(Integer price) {
+            ++count;
+        }
+    }
+
+    static class PriceBatches {
+        int count;
+
+        @ElementEnd(value = "/Prices/Price", batchSize = PRICES)
+        void prices(List<Integer> batch) {
+            count += batch.size();
+        }
+    }
+
+    static class ThirdPriceStopper {
+        private int count;
+
+        @ElementEnd("/Prices/Price")
+        ParseAction price(Integer price) {
+            return ++count == 3 ? ParseAction.STOP : ParseAction.CONTINUE;
+        }
+    }
+
+    static class PriceSummer {
+        private final boolean slow;
+        long total;
+        String thread;
+
+        PriceSummer(boolean slow) {
+            this.slow = slow;
+        }
+
+        @ElementEnd("/Prices/Price")
+        void price(Integer price) throws InterruptedException {
+            total += price;
+            thread = Thread.currentThread().getName();
+            if (slow && price % 1000 == 0) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+}
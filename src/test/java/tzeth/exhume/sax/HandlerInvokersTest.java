@@ -0,0 +1,116 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+import org.xml.sax.helpers.AttributesImpl;
+
+public final class HandlerInvokersTest {
+
+    @Test
+    public void publicMethod() throws Exception {
+        Target t = new Target();
+        EndInvoker invoker = HandlerInvokers.endInvoker(method("publicMethod", String.class));
+        invoker.invoke(t, "a");
+        assertEquals("public:a", t.last);
+    }
+
+    @Test
+    public void privateMethod() throws Exception {
+        Target t = new Target();
+        EndInvoker invoker = HandlerInvokers.endInvoker(method("privateMethod", Integer.class));
+        invoker.invoke(t, 7);
+        assertEquals("private:7", t.last);
+    }
+
+    @Test
+    public void privateMethodsAreLinkedInTheirClass() throws Exception {
+        Object invoker = HandlerInvokers.endInvoker(method("privateMethod", Integer.class));
+        assertTrue(invoker.getClass().getName().startsWith(Target.class.getName() + "$$Lambda"));
+        invoker = HandlerInvokers.primitiveEndInvoker(method("privateDoubleMethod", double.class));
+        assertTrue(invoker.getClass().getName().startsWith(Target.class.getName() + "$$Lambda"));
+    }
+
+    @Test
+    public void staticMethod() throws Exception {
+        EndInvoker invoker = HandlerInvokers.endInvoker(method("staticMethod", String.class));
+        invoker.invoke(new Target(), "b");
+        assertEquals("static:b", Target.lastStatic);
+    }
+
+    @Test
+    public void startMethod() throws Exception {
+        Target t = new Target();
+        StartInvoker invoker = HandlerInvokers
+                .startInvoker(method("startMethod", StartOfElement.class));
+        invoker.invoke(t, new StartOfElement("", "", "x", new AttributesImpl()));
+        assertEquals("start:x", t.last);
+    }
+
+    @Test
+    public void primitiveMethods() throws Exception {
+        Target t = new Target();
+        EndInvoker.OfInt publicInvoker = (EndInvoker.OfInt) HandlerInvokers
+                .primitiveEndInvoker(method("intMethod", int.class));
+        publicInvoker.invoke(t, 3);
+        assertEquals("int:3", t.last);
+        EndInvoker.OfDouble privateInvoker = (EndInvoker.OfDouble) HandlerInvokers
+                .primitiveEndInvoker(method("privateDoubleMethod", double.class));
+        privateInvoker.invoke(t, 1.5);
+        assertEquals("double:1.5", t.last);
+    }
+
+    @Test
+    public void invokersAreBoundOnce() throws Exception {
+        Method m = method("publicMethod", String.class);
+        assertSame(HandlerInvokers.endInvoker(m), HandlerInvokers.endInvoker(m));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void exceptionsFromHandlerPropagate() throws Exception {
+        EndInvoker invoker = HandlerInvokers.endInvoker(method("failingMethod", String.class));
+        invoker.invoke(new Target(), "c");
+    }
+
+    private static Method method(String name, Class<?> parameterType) throws Exception {
+        return Target.class.getDeclaredMethod(name, parameterType);
+    }
+
+    private static class Target {
+        private static String lastStatic;
+        private String last;
+
+        public void publicMethod(String value) {
+            this.last = "public:" + value;
+        }
+
+        private void privateMethod(Integer value) {
+            this.last = "private:" + value;
+        }
+
+        public void intMethod(int value) {
+            this.last = "int:" + value;
+        }
+
+        private void privateDoubleMethod(double value) {
+            this.last = "double:" + value;
+        }
+
+        static void staticMethod(String value) {
+            lastStatic = "static:" + value;
+        }
+
+        public void startMethod(StartOfElement soe) {
+            this.last = "start:" + soe.qName();
+        }
+
+        public void failingMethod(String value) {
+            throw new IllegalStateException(value);
+        }
+    }
+
+}
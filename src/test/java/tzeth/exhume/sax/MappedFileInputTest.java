@@ -0,0 +1,63 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class MappedFileInputTest {
+    private static final byte[] CONTENT = "0123456789abcdefghij".getBytes();
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("mapped", ".xml");
+        Files.write(file.toPath(), CONTENT);
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void chunksCoverTheFile() throws IOException {
+        try (MappedFileInput input = new MappedFileInput(file, 7)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int chunks = 0;
+            for (ByteBuffer chunk = input.nextChunk(); chunk != null; chunk = input.nextChunk()) {
+                while (chunk.hasRemaining()) {
+                    out.write(chunk.get());
+                }
+                ++chunks;
+            }
+            assertEquals(3, chunks);
+            assertArrayEquals(CONTENT, out.toByteArray());
+            assertNull(input.nextChunk());
+        }
+    }
+
+    @Test
+    public void readsAcrossChunks() throws IOException {
+        try (MappedFileInput input = new MappedFileInput(file, 3)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] bytes = new byte[5];
+            for (int n = input.read(bytes, 0, 5); n >= 0; n = input.read(bytes, 0, 5)) {
+                out.write(bytes, 0, n);
+            }
+            assertArrayEquals(CONTENT, out.toByteArray());
+            assertEquals(-1, input.read());
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public final class ParallelFileParseTest {
+    private static final int BOOKS = 500;
+
+    private File file;
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\"?>\n<Inventory>\n  <Books>\n");
+        for (int n = 0; n < BOOKS; ++n) {
+            xml.append("    <Book id=\"").append(n).append("\">\n")
+                    .append("      <Title>Title &amp; ").append(n).append("</Title>\n")
+                    .append("      <Price>").append(n % 7).append("</Price>\n")
+                    .append("    </Book>\n");
+        }
+        xml.append("  </Books>\n</Inventory>\n");
+        file = File.createTempFile("books", ".xml");
+        Files.write(file.toPath(), xml.toString().getBytes(StandardCharsets.UTF_8));
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+        file.delete();
+    }
+
+    @Test
+    public void handlersSeeTheSameAsSequentialParse() throws SAXException, IOException {
+        ParseSession sequential = parser().parseFile(file);
+        for (long chunkSize : new long[] { 1, 100, 1000, 64 * 1024 }) {
+            ParseSession parallel = parser().parseFileInParallel(file, "/Inventory/Books/Book",
+                    pool, chunkSize);
+            assertEquals(sequential.handler(BookLog.class).events,
+                    parallel.handler(BookLog.class).events);
+            assertEquals(sequential.handler(PriceSummer.class).total,
+                    parallel.handler(PriceSummer.class).total);
+        }
+    }
+
+    @Test
+    public void chunksAreMergedInDocumentOrder() throws SAXException, IOException {
+        ParseSession parallel = parser().parseFileInParallel(file, "/Inventory/Books/Book", pool,
+                100);
+        List<String> ids = parallel.handler(PriceSummer.class).ids;
+        assertEquals(BOOKS, ids.size());
+        for (int n = 0; n < BOOKS; ++n) {
+            assertEquals(String.valueOf(n), ids.get(n));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void recordPathMustBeBelowTheRoot() throws SAXException, IOException {
+        parser().parseFileInParallel(file, "/Inventory", pool);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void pipelinedParserCannotParseInParallel() throws SAXException, IOException {
+        CompiledParser.builder()
+                .handler(PriceSummer.class, PriceSummer::new, PriceSummer::merge)
+                .pipelined(true)
+                .build()
+                .parseFileInParallel(file, "/Inventory/Books/Book", pool);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void groupedParserCannotParseInParallel() throws SAXException, IOException {
+        CompiledParser.builder()
+                .handler(BookLog.class, BookLog::new, "books")
+                .build()
+                .parseFileInParallel(file, "/Inventory/Books/Book", pool);
+    }
+
+    private static CompiledParser parser() {
+        return CompiledParser.builder()
+                .handler(BookLog.class, BookLog::new)
+                .handler(PriceSummer.class, PriceSummer::new, PriceSummer::merge)
+                .engine(Engine.NATIVE)
+                .build();
+    }
+
+    static class BookLog {
+        final List<String> events = new ArrayList<>();
+
+        @ElementStart("/Inventory/Books")
+        void books(StartOfElement soe) {
+            events.add("start " + soe.path());
+        }
+
+        @ElementStart("/Inventory/Books/Book")
+        void book(StartOfElement soe) {
+            events.add("book " + soe.attributeValue("id") + " " + soe.path());
+        }
+
+        @ElementEnd("/Inventory/Books/Book/Title")
+        void title(String title) {
+            events.add("title " + title);
+        }
+
+        @ElementEnd("/Inventory")
+        void end(EndOfElement eoe) {
+            events.add("end " + eoe.path());
+        }
+    }
+
+    static class PriceSummer {
+        int total;
+        final List<String> ids = new ArrayList<>();
+
+        @ElementStart("/Inventory/Books/Book")
+        void book(StartOfElement soe) {
+            ids.add(soe.attributeValue("id"));
+        }
+
+        @ElementEnd("/Inventory/Books/Book/Price")
+        void price(Integer price) {
+            total += price;
+        }
+
+        PriceSummer merge(PriceSummer other) {
+            total += other.total;
+            ids.addAll(other.ids);
+            return this;
+        }
+    }
+
+}
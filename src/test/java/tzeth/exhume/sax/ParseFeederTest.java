@@ -0,0 +1,109 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public final class ParseFeederTest {
+    private static final int BOOKS = 1000;
+
+    @Test
+    public void documentsFedInFragmentsAreInterleaved() throws SAXException {
+        CompiledParser parser = CompiledParser.builder()
+                .handler(PriceSummer.class, PriceSummer::new)
+                .build();
+        byte[] xml = library().getBytes(StandardCharsets.UTF_8);
+        ParseFeeder[] feeders = new ParseFeeder[10];
+        int[] positions = new int[feeders.length];
+        for (int n = 0; n < feeders.length; ++n) {
+            feeders[n] = parser.newFeeder();
+        }
+        // Every document gets a fragment in turn, of a size of its own, as from an event loop
+        for (boolean fed = true; fed;) {
+            fed = false;
+            for (int n = 0; n < feeders.length; ++n) {
+                int length = Math.min(3 + 5 * n, xml.length - positions[n]);
+                if (length > 0) {
+                    feeders[n].feed(ByteBuffer.wrap(xml, positions[n], length));
+                    positions[n] += length;
+                    fed = true;
+                }
+            }
+        }
+        for (int n = 0; n < feeders.length; ++n) {
+            assertEquals(ParseOutcome.COMPLETED, feeders[n].endOfInput());
+            PriceSummer summer = feeders[n].session().handler(PriceSummer.class);
+            assertEquals(BOOKS * (BOOKS - 1L) / 2, summer.total);
+            assertEquals(BOOKS, summer.batched);
+        }
+    }
+
+    @Test
+    public void handlerStopsAFedParse() throws SAXException {
+        FirstBooks handler = new FirstBooks();
+        ParseFeeder feeder = new ExhumeSaxParser(handler).newFeeder();
+        byte[] xml = library().getBytes(StandardCharsets.UTF_8);
+        for (int position = 0; position < xml.length && !feeder.isStopped(); position += 100) {
+            feeder.feed(ByteBuffer.wrap(xml, position, Math.min(100, xml.length - position)));
+        }
+        assertTrue(feeder.isStopped());
+        assertEquals(ParseOutcome.STOPPED, feeder.endOfInput());
+        assertEquals(3, handler.books);
+    }
+
+    @Test(expected = SAXException.class)
+    public void incompleteDocumentFailsAtTheEnd() throws SAXException {
+        ParseFeeder feeder = new ExhumeSaxParser(new FirstBooks()).newFeeder();
+        feeder.feed(ByteBuffer.wrap("<Library><Book>".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(feeder.isStopped());
+        feeder.endOfInput();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void pipelinedParserCannotBeFed() {
+        ExhumeSaxParser parser = new ExhumeSaxParser(new FirstBooks());
+        parser.setPipelined(true);
+        parser.newFeeder();
+    }
+
+    private static String library() {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\"?>\n<Library>");
+        for (int n = 0; n < BOOKS; ++n) {
+            xml.append("<Book><Title>å &amp; ").append(n).append("</Title><Price>")
+                    .append(n).append("</Price></Book>\n");
+        }
+        return xml.append("</Library>").toString();
+    }
+
+    static class PriceSummer {
+        long total;
+        int batched;
+
+        @ElementEnd("/Library/Book/Price")
+        void price(long price) {
+            total += price;
+        }
+
+        @ElementEnd(value = "/Library/Book/Title", batchSize = 64)
+        void titles(List<String> titles) {
+            batched += titles.size();
+        }
+    }
+
+    static class FirstBooks {
+        int books;
+
+        @ElementStart("/Library/Book")
+        ParseAction book(StartOfElement soe) {
+            return ++books == 3 ? ParseAction.STOP : ParseAction.CONTINUE;
+        }
+    }
+
+}
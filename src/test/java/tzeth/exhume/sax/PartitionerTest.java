@@ -0,0 +1,139 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public final class PartitionerTest {
+    private static final int ORDERS = 5000;
+    private static final int CUSTOMERS = 37;
+
+    @Test
+    public void recordsWithTheSameKeyAreHandledInOrder() throws SAXException {
+        for (Engine engine : Engine.values()) {
+            ParseSession session = CompiledParser.builder()
+                    .handler(OrderBook.class, OrderBook::new, OrderBook::merge)
+                    .partitionBy("Order/Customer", 4)
+                    .engine(engine)
+                    .build()
+                    .parseXml(orders());
+            OrderBook book = session.handler(OrderBook.class);
+            assertEquals(CUSTOMERS, book.ordersByCustomer.size());
+            int total = 0;
+            for (Map.Entry<String, List<Integer>> e : book.ordersByCustomer.entrySet()) {
+                List<Integer> ids = e.getValue();
+                for (int n = 0; n < ids.size(); ++n) {
+                    assertEquals("c" + ids.get(n) % CUSTOMERS, e.getKey());
+                    assertEquals(ids.get(n) % CUSTOMERS + n * CUSTOMERS, (int) ids.get(n));
+                }
+                total += ids.size();
+            }
+            assertEquals(ORDERS, total);
+            assertEquals(1, book.headers);
+            assertTrue(book.threads.size() > 1);
+        }
+    }
+
+    @Test
+    public void handlersOfAStoppedParseAreMerged() throws SAXException {
+        ParseSession session = CompiledParser.builder()
+                .handler(StoppingCounter.class, StoppingCounter::new, StoppingCounter::merge)
+                .partitionBy("Order/Customer", 4)
+                .build()
+                .parseXml(orders());
+        assertEquals(ParseOutcome.STOPPED, session.outcome());
+        int amounts = session.handler(StoppingCounter.class).amounts;
+        assertTrue(amounts >= 3 && amounts < ORDERS);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void handlersMustBeMergeable() {
+        CompiledParser.builder()
+                .handler(OrderBook.class, OrderBook::new)
+                .partitionBy("Order/Customer", 4)
+                .build();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void cannotBePipelined() {
+        CompiledParser.builder()
+                .handler(OrderBook.class, OrderBook::new, OrderBook::merge)
+                .partitionBy("Order/Customer", 4)
+                .pipelined(true)
+                .build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keyPathMustNameRecordAndKey() {
+        CompiledParser.builder()
+                .handler(OrderBook.class, OrderBook::new, OrderBook::merge)
+                .partitionBy("Customer", 4)
+                .build();
+    }
+
+    private static String orders() {
+        StringBuilder xml = new StringBuilder("<Orders><Header>x</Header>");
+        for (int n = 0; n < ORDERS; ++n) {
+            xml.append("<Order id=\"").append(n).append("\"><Customer>c").append(n % CUSTOMERS)
+                    .append("</Customer><Amount>").append(n).append("</Amount></Order>");
+        }
+        return xml.append("</Orders>").toString();
+    }
+
+    static class StoppingCounter {
+        int amounts;
+
+        @ElementEnd("Order/Amount")
+        ParseAction amount(Integer amount) {
+            return ++amounts == 3 ? ParseAction.STOP : ParseAction.CONTINUE;
+        }
+
+        StoppingCounter merge(StoppingCounter other) {
+            amounts += other.amounts;
+            return this;
+        }
+    }
+
+    static class OrderBook {
+        final Map<String, List<Integer>> ordersByCustomer = new HashMap<>();
+        final Set<String> threads = new HashSet<>();
+        int headers;
+        private String customer;
+
+        @ElementEnd("/Orders/Header")
+        void header(String value) {
+            ++headers;
+        }
+
+        @ElementEnd("Order/Customer")
+        void customer(String value) {
+            customer = value;
+        }
+
+        @ElementEnd("Order/Amount")
+        void amount(Integer amount) {
+            ordersByCustomer.computeIfAbsent(customer, c -> new ArrayList<>()).add(amount);
+            threads.add(Thread.currentThread().getName());
+        }
+
+        OrderBook merge(OrderBook other) {
+            other.ordersByCustomer.forEach((customer, ids) -> {
+                assertNull(ordersByCustomer.put(customer, ids));
+            });
+            threads.addAll(other.threads);
+            headers += other.headers;
+            return this;
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
+
+public final class PathAutomatonTest {
+
+    @Test
+    public void absoluteExpressionMatchesOnlyFromRoot() {
+        PathAutomaton a = compile("/a/b/c");
+        assertArrayEquals(new int[] { 0 }, walk(a, "a", "b", "c").accepted());
+        assertArrayEquals(new int[0], walk(a, "x", "a", "b", "c").accepted());
+        assertArrayEquals(new int[0], walk(a, "a", "b").accepted());
+    }
+
+    @Test
+    public void relativeExpressionMatchesAsSuffix() {
+        PathAutomaton a = compile("b/c");
+        assertArrayEquals(new int[] { 0 }, walk(a, "b", "c").accepted());
+        assertArrayEquals(new int[] { 0 }, walk(a, "x", "y", "b", "c").accepted());
+        assertArrayEquals(new int[] { 0 }, walk(a, "b", "b", "c").accepted());
+        assertArrayEquals(new int[0], walk(a, "b", "c", "d").accepted());
+    }
+
+    @Test
+    public void relativeExpressionMatchesWholeNamesOnly() {
+        PathAutomaton a = compile("Price");
+        assertArrayEquals(new int[0], walk(a, "X", "BookPrice").accepted());
+        assertArrayEquals(new int[] { 0 }, walk(a, "X", "Price").accepted());
+    }
+
+    @Test
+    public void severalExpressionsCanMatchTheSameElement() {
+        PathAutomaton a = compile("/a/b/c", "c", "b/c", "/a/x");
+        assertArrayEquals(new int[] { 0, 1, 2 }, walk(a, "a", "b", "c").accepted());
+        assertArrayEquals(new int[] { 1 }, walk(a, "a", "x", "c").accepted());
+        assertArrayEquals(new int[] { 3 }, walk(a, "a", "x").accepted());
+    }
+
+    @Test
+    public void stateIsDeadWhenNothingBelowCanMatch() {
+        PathAutomaton a = compile("/a/b/c");
+        assertFalse(walk(a, "a", "b").isDead());
+        assertTrue(walk(a, "a", "x").isDead());
+        assertTrue(walk(a, "a", "b", "c").isDead());
+        assertFalse(walk(compile("c"), "x").isDead());
+    }
+
+    @Test
+    public void wildcardsMatchUnknownNames() {
+        PathAutomaton a = compile("/a/*/c", "**/d");
+        assertArrayEquals(new int[] { 0 }, walk(a, "a", "never-seen", "c").accepted());
+        assertArrayEquals(new int[] { 1 }, walk(a, "x", "y", "d").accepted());
+        assertArrayEquals(new int[] { 1 }, walk(a, "d").accepted());
+        assertFalse(walk(a, "a", "b", "c").isDead());
+    }
+
+    @Test
+    public void attributePredicatesAreTestedOnStart() {
+        PathAutomaton a = compile("/a/b[@t='x']/c", "b[@t='y']/c", "/a/b/c");
+        PathAutomaton.State b = a.initial()
+                .next(a.names().find("a"))
+                .next(a.names().find("b"), attributes("t", "x"));
+        assertArrayEquals(new int[] { 0, 2 }, a.next(b, "c").accepted());
+        b = a.initial()
+                .next(a.names().find("a"))
+                .next(a.names().find("b"), attributes("t", "y"));
+        assertArrayEquals(new int[] { 1, 2 }, a.next(b, "c").accepted());
+        assertArrayEquals(new int[] { 2 }, walk(a, "a", "b", "c").accepted());
+        assertTrue(compile("/a[@t='x']/b").initial()
+                .next(0, attributes("t", "z")).isDead());
+    }
+
+    @Test
+    public void equalPathsShareState() {
+        PathAutomaton a = compile("/a/b", "b");
+        assertEquals(walk(a, "a", "b").id(), walk(a, "a", "b").id());
+        assertEquals(walk(a, "x", "b").id(), walk(a, "y", "b").id());
+    }
+
+    private static PathAutomaton compile(String... expressions) {
+        return PathAutomaton.compile(Arrays.stream(expressions)
+                .map(PathExpression::of)
+                .collect(Collectors.toList()));
+    }
+
+    private static Attributes attributes(String name, String value) {
+        AttributesImpl attributes = new AttributesImpl();
+        attributes.addAttribute("", name, name, "CDATA", value);
+        return attributes;
+    }
+
+    private static PathAutomaton.State walk(PathAutomaton a, String... names) {
+        PathAutomaton.State state = a.initial();
+        for (String name : names) {
+            state = a.next(state, name);
+        }
+        return state;
+    }
+
+}
@@ -1,9 +1,9 @@
 package tzeth.exhume.sax;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
-import org.junit.Ignore;
 import org.junit.Test;
 
 import tzeth.exhume.sax.PathExpression;
@@ -16,25 +16,21 @@ public final class PathExpressionTest {
     }
 
     @Test(expected = IllegalArgumentException.class)
-    @Ignore("Wildcard support not in place yet")
     public void mustEndWithName() {
         PathExpression.of("/a/*");
     }
 
     @Test(expected = IllegalArgumentException.class)
-    @Ignore("Wildcard support not in place yet")
     public void consecutiveMultipleWildcardsNotAllowed() {
         PathExpression.of("a/**/**");
     }
 
     @Test(expected = IllegalArgumentException.class)
-    @Ignore("Wildcard support not in place yet")
     public void consecutiveMixedWildcardsNotAllowed() {
         PathExpression.of("a/*/**");
     }
 
     @Test(expected = IllegalArgumentException.class)
-    @Ignore("Wildcard support not in place yet")
     public void consecutiveSingleWildcardsNotAllowed() {
         PathExpression.of("a/*/*");
     }
@@ -56,6 +52,66 @@ public final class PathExpressionTest {
         assertFalse(expr.matches("/root/x/y/z"));
     }
 
+    @Test
+    public void relativePathMatchesWholeNamesOnly() {
+        PathExpression expr = PathExpression.of("Price");
+        assertTrue(expr.matches("/X/Price"));
+        assertFalse(expr.matches("/X/BookPrice"));
+    }
+
+    @Test
+    public void oneLevelWildcard() {
+        PathExpression expr = PathExpression.of("/a/*/c");
+        assertTrue(expr.matches("/a/b/c"));
+        assertTrue(expr.matches("/a/x/c"));
+        assertFalse(expr.matches("/a/c"));
+        assertFalse(expr.matches("/a/b/b/c"));
+        assertTrue(PathExpression.of("*/c").matches("/x/y/c"));
+        assertFalse(PathExpression.of("*/c").matches("/c"));
+    }
+
+    @Test
+    public void multiLevelWildcard() {
+        PathExpression expr = PathExpression.of("/a/**/c");
+        assertTrue(expr.matches("/a/c"));
+        assertTrue(expr.matches("/a/b/c"));
+        assertTrue(expr.matches("/a/b/c/d/c"));
+        assertFalse(expr.matches("/x/a/b/c"));
+        assertFalse(expr.matches("/a/b/c/d"));
+        assertTrue(PathExpression.of("**/Amount").matches("/Amount"));
+        assertTrue(PathExpression.of("/**/Amount").matches("/x/y/Amount"));
+    }
+
+    @Test
+    public void multiLevelWildcardOnDeepPath() {
+        StringBuilder path = new StringBuilder();
+        for (int n = 0; n < 10_000; ++n) {
+            path.append("/a");
+        }
+        assertFalse(PathExpression.of("a/**/a/**/a/**/b").matches(path.toString()));
+        assertTrue(PathExpression.of("a/**/a/**/a/**/a").matches(path.toString()));
+    }
+
+    @Test
+    public void attributePredicates() {
+        PathExpression expr = PathExpression.of("/a/Book[@type='e/book'][@lang=\"it's\"]/Price");
+        assertEquals("/a/Book[@type='e/book'][@lang=\"it's\"]/Price", expr.toString());
+        assertEquals(expr, PathExpression.of(expr.toString()));
+        assertEquals(3, expr.particles().size());
+        assertFalse(expr.matches("/a/Book/Price"));
+        assertFalse(PathExpression.of("Book[@type='ebook']/**/Price").matches("/Book/Price"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void attributePredicatesMustFollowAName() {
+        PathExpression.of("a/*[@type='ebook']/b");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void attributePredicateMustBeClosed() {
+        PathExpression.of("a/b[@type='ebook'");
+    }
+
     @Test
     public void testLeaf() {
         PathExpression expr = PathExpression.of("z");
@@ -0,0 +1,76 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public final class PathTrackerTest {
+
+    @Test
+    public void namesAreInternedInOrder() {
+        ElementNames names = new ElementNames();
+        assertEquals(0, names.intern("a"));
+        assertEquals(1, names.intern("b"));
+        assertEquals(0, names.intern("a"));
+        assertEquals(-1, names.find("c"));
+        assertEquals("b", names.name(1));
+    }
+
+    @Test
+    public void copiedNamesGrowIndependently() {
+        ElementNames names = new ElementNames();
+        names.intern("a");
+        ElementNames copy = names.copy();
+        for (int n = 0; n < 100; ++n) {
+            assertEquals(n + 1, copy.intern("x" + n));
+        }
+        assertEquals(1, names.size());
+        assertEquals(-1, names.find("x0"));
+        assertEquals(42, copy.find("x41"));
+    }
+
+    @Test
+    public void pathFollowsPushesAndPops() {
+        ElementNames names = new ElementNames();
+        PathTracker tracker = new PathTracker(names);
+        tracker.push(names.intern("a"));
+        tracker.push(names.intern("b"));
+        assertEquals(Path.of("/a/b"), tracker.toPath());
+        tracker.pop();
+        tracker.push(names.intern("c"));
+        assertEquals(Path.of("/a/c"), tracker.toPath());
+        assertEquals(2, tracker.depth());
+    }
+
+    @Test
+    public void hashDependsOnPathOnly() {
+        ElementNames names = new ElementNames();
+        PathTracker tracker = new PathTracker(names);
+        tracker.push(names.intern("a"));
+        tracker.push(names.intern("b"));
+        int hash = tracker.hash();
+        tracker.pop();
+        tracker.pop();
+        tracker.push(names.intern("a"));
+        tracker.push(names.intern("b"));
+        assertEquals(hash, tracker.hash());
+    }
+
+    @Test
+    public void samePathIsCreatedOnce() {
+        ElementNames names = new ElementNames();
+        PathTracker tracker = new PathTracker(names);
+        tracker.push(names.intern("a"));
+        Path first = tracker.toPath();
+        tracker.push(names.intern("b"));
+        Path second = tracker.toPath();
+        tracker.pop();
+        assertSame(first, tracker.toPath());
+        tracker.push(names.intern("b"));
+        assertSame(second, tracker.toPath());
+        assertNotSame(first, second);
+    }
+
+}
@@ -0,0 +1,79 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import tzeth.exhume.ExhumeException;
+
+public final class PipelineTest {
+    private static final int BOOKS = 20 * Pipeline.BATCH_SIZE;
+
+    @Test
+    public void pipelinedParseDeliversTheSameEvents() throws SAXException {
+        String xml = books(BOOKS);
+        for (Engine engine : Engine.values()) {
+            BookLog direct = new BookLog();
+            new ExhumeSaxParser(direct).parseXml(xml);
+
+            BookLog pipelined = new BookLog();
+            ExhumeSaxParser parser = new ExhumeSaxParser(pipelined);
+            parser.setEngine(engine);
+            parser.setPipelined(true);
+            parser.parseXml(xml);
+
+            assertEquals(direct.events, pipelined.events);
+            assertNotEquals(Thread.currentThread().getName(), pipelined.thread);
+        }
+    }
+
+    @Test(expected = ExhumeException.class)
+    public void handlerFailureStopsTheParse() throws SAXException {
+        CompiledParser parser = CompiledParser.builder()
+                .handler(Failing.class, Failing::new)
+                .pipelined(true)
+                .build();
+        parser.parseXml(books(BOOKS));
+    }
+
+    private static String books(int count) {
+        StringBuilder xml = new StringBuilder("<Books>");
+        for (int n = 0; n < count; ++n) {
+            xml.append("<Book id=\"").append(n).append("\"><Price>").append(n % 10)
+                    .append("</Price></Book>");
+        }
+        return xml.append("</Books>").toString();
+    }
+
+    static class BookLog {
+        final List<String> events = new ArrayList<>();
+        String thread;
+
+        @ElementStart("/Books/Book")
+        void book(StartOfElement soe) {
+            events.add(soe.path() + " " + soe.attributeValue("id"));
+        }
+
+        @ElementEnd("Price")
+        void price(Integer price) {
+            events.add("price " + price);
+            thread = Thread.currentThread().getName();
+        }
+    }
+
+    static class Failing {
+
+        @ElementEnd("Price")
+        void price(Integer price) {
+            if (price == 9) {
+                throw new IllegalStateException("Price too high");
+            }
+        }
+    }
+
+}
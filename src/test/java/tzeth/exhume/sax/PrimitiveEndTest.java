@@ -0,0 +1,150 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import tzeth.exhume.ExhumeException;
+
+public final class PrimitiveEndTest {
+    private static final String XML = "<Item>"
+            + "<Quantity>3</Quantity><Id>12345678901</Id><Price>2.5</Price>"
+            + "<Weight>0.25</Weight><InStock>true</InStock>"
+            + "</Item>";
+
+    @Test
+    public void primitiveValuesArePassed() throws SAXException {
+        for (Engine engine : Engine.values()) {
+            for (boolean pipelined : new boolean[] { false, true }) {
+                Primitives handler = new Primitives();
+                ExhumeSaxParser parser = new ExhumeSaxParser(handler);
+                parser.setEngine(engine);
+                parser.setPipelined(pipelined);
+                parser.parseXml(XML);
+                assertEquals("[3, 12345678901, 2.5, 0.25, true]", handler.values.toString());
+            }
+        }
+    }
+
+    @Test
+    public void deferredPrimitiveValuesAreKeptInOrder() throws SAXException {
+        StringBuilder xml = new StringBuilder("<Item>");
+        for (int n = 0; n < 5000; ++n) {
+            xml.append("<Quantity>").append(n).append("</Quantity><Price>").append(n)
+                    .append(".5</Price><Name>n").append(n).append("</Name>");
+        }
+        String items = xml.append("</Item>").toString();
+        for (boolean grouped : new boolean[] { false, true }) {
+            Totals handler = new Totals();
+            ExhumeSaxParser parser = new ExhumeSaxParser();
+            if (grouped) {
+                parser.registerHandler(handler, "totals");
+            } else {
+                parser.registerHandler(handler);
+                parser.setPipelined(true);
+            }
+            parser.parseXml(items);
+            assertEquals(5000, handler.count);
+            assertEquals(0, handler.mismatches);
+        }
+    }
+
+    @Test
+    public void reflectiveDispatcherBindsPrimitives() throws SAXException {
+        ReflectivePrimitives handler = new ReflectivePrimitives();
+        new ExhumeSaxParser(handler).parseXml(XML);
+        assertEquals("[3, 2.5]", handler.values.toString());
+    }
+
+    @Test(expected = ExhumeException.class)
+    public void invalidValueFails() throws SAXException {
+        new ExhumeSaxParser(new Primitives()).parseXml("<Item><Quantity>x</Quantity></Item>");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedPrimitiveIsRejected() {
+        new ExhumeSaxParser(new UnsupportedPrimitive());
+    }
+
+    @RootPath("/Item")
+    static class Totals {
+        int count;
+        int mismatches;
+        private int quantity;
+        private double price;
+
+        @ElementEnd("Quantity")
+        void quantity(int quantity) {
+            this.quantity = quantity;
+        }
+
+        @ElementEnd("Price")
+        void price(double price) {
+            this.price = price;
+        }
+
+        @ElementEnd("Name")
+        void name(String name) {
+            if (quantity != count || price != count + 0.5 || !name.equals("n" + count)) {
+                ++mismatches;
+            }
+            ++count;
+        }
+    }
+
+    @RootPath("/Item")
+    static class Primitives {
+        final List<Object> values = new ArrayList<>();
+
+        @ElementEnd("Quantity")
+        void quantity(int quantity) {
+            values.add(quantity);
+        }
+
+        @ElementEnd("Id")
+        void id(long id) {
+            values.add(id);
+        }
+
+        @ElementEnd("Price")
+        void price(double price) {
+            values.add(price);
+        }
+
+        @ElementEnd("Weight")
+        void weight(float weight) {
+            values.add(weight);
+        }
+
+        @ElementEnd("InStock")
+        void inStock(boolean inStock) {
+            values.add(inStock);
+        }
+    }
+
+    @RootPath("/Item")
+    private static class ReflectivePrimitives {
+        final List<Object> values = new ArrayList<>();
+
+        @ElementEnd("Quantity")
+        private void quantity(int quantity) {
+            values.add(quantity);
+        }
+
+        @ElementEnd("Price")
+        void price(double price) {
+            values.add(price);
+        }
+    }
+
+    private static class UnsupportedPrimitive {
+
+        @ElementEnd("/Item/Quantity")
+        private void quantity(short quantity) {/**/}
+    }
+
+}
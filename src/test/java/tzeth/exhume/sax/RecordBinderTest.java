@@ -0,0 +1,94 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public final class RecordBinderTest {
+    private static final String XML = "<Inventory><Books>"
+            + "<Book id=\"b1\" onSale=\"true\"><Title>East of Eden</Title>"
+            + "<Price currency=\"EUR\">15.50</Price><Author>Steinbeck</Author></Book>"
+            + "<Book id=\"b2\"><Title>Ghost Story</Title><Price>12</Price>"
+            + "<Author>Straub</Author><Author>Someone</Author><Pages>483</Pages></Book>"
+            + "</Books><DVDs><DVD><Title>Pi</Title></DVD></DVDs></Inventory>";
+
+    @Test
+    public void recordsAreBoundToObjects() throws SAXException {
+        for (Engine engine : Engine.values()) {
+            List<Book> books = new ArrayList<>();
+            ExhumeSaxParser parser = new ExhumeSaxParser();
+            parser.setEngine(engine);
+            parser.registerRecordConsumer(Book.class, books::add);
+            parser.parseXml(XML);
+
+            assertEquals(2, books.size());
+            Book first = books.get(0);
+            assertEquals("b1", first.id);
+            assertEquals(true, first.onSale);
+            assertEquals("East of Eden", first.title);
+            assertEquals(new BigDecimal("15.50"), first.price);
+            assertEquals("EUR", first.currency);
+            assertEquals(Arrays.asList("Steinbeck"), first.authors);
+            assertEquals(0, first.pages);
+            Book second = books.get(1);
+            assertEquals("b2", second.id);
+            assertEquals(false, second.onSale);
+            assertNull(second.currency);
+            assertEquals(Arrays.asList("Straub", "Someone"), second.authors);
+            assertEquals(483, second.pages);
+        }
+    }
+
+    @Test
+    public void recordsAndHandlersShareAParse() throws SAXException {
+        List<Book> books = new ArrayList<>();
+        DvdCounter counter = new DvdCounter();
+        ExhumeSaxParser parser = new ExhumeSaxParser(counter);
+        parser.registerRecordConsumer(Book.class, books::add);
+        parser.setPipelined(true);
+        parser.parseXml(XML);
+
+        assertEquals(2, books.size());
+        assertEquals(1, counter.dvds);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void recordClassMustHaveRecordPath() {
+        new ExhumeSaxParser().registerRecordConsumer(DvdCounter.class, d -> {});
+    }
+
+    @RecordPath("/Inventory/Books/Book")
+    private static class Book {
+        @Bind("@id")
+        private String id;
+        @Bind("@onSale")
+        private boolean onSale;
+        @Bind("Title")
+        private String title;
+        @Bind("Price")
+        private BigDecimal price;
+        @Bind("Price/@currency")
+        private String currency;
+        @Bind("Author")
+        private List<String> authors;
+        @Bind("Pages")
+        private int pages;
+    }
+
+    private static class DvdCounter {
+        int dvds;
+
+        @ElementStart("DVD")
+        void dvd(StartOfElement soe) {
+            ++dvds;
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import tzeth.exhume.ExhumeException;
+
+public final class RecordStreamTest {
+    private static final int BOOKS = 20_000;
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("inventory", ".xml");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void streamsAllRecords() throws IOException {
+        write(inventory(BOOKS) + "</Books></Inventory>");
+        try (Stream<Book> books = new ExhumeSaxParser().stream(file, Book.class)) {
+            assertEquals(BOOKS * (BOOKS - 1L) / 2, books.mapToLong(b -> b.price).sum());
+        }
+    }
+
+    @Test
+    public void parsesOnlyAsFarAsPulled() throws IOException {
+        // The end of the document is broken, which a full parse would report
+        write(inventory(BOOKS) + "</Broken>");
+        ExhumeSaxParser parser = new ExhumeSaxParser();
+        try (Stream<Book> books = parser.stream(file, "/Inventory/Books/Book", Book.class)) {
+            List<String> titles = books.filter(b -> b.price % 2 == 1)
+                    .limit(3)
+                    .map(b -> b.title)
+                    .collect(Collectors.toList());
+            assertEquals("[Book 1, Book 3, Book 5]", titles.toString());
+        }
+    }
+
+    @Test(expected = ExhumeException.class)
+    public void parseErrorIsThrownFromTheStream() throws IOException {
+        write(inventory(BOOKS) + "</Broken>");
+        try (Stream<Book> books = new ExhumeSaxParser().stream(file, Book.class)) {
+            books.count();
+        }
+    }
+
+    private void write(String xml) throws IOException {
+        Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String inventory(int bookCount) {
+        StringBuilder xml = new StringBuilder("<Inventory><Books>");
+        for (int n = 0; n < bookCount; ++n) {
+            xml.append("<Book id=\"b").append(n).append("\"><Title>Book ").append(n)
+                    .append("</Title><Price>").append(n).append("</Price></Book>");
+        }
+        return xml.toString();
+    }
+
+    @RecordPath("/Inventory/Books/Book")
+    private static class Book {
+        @Bind("Title")
+        private String title;
+        @Bind("Price")
+        private long price;
+    }
+
+}
@@ -0,0 +1,78 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+public final class SaxParsersTest {
+
+    @Test
+    public void parserIsReusedByTheSameThread() throws SAXException {
+        SaxParsers.parseXml("<a/>", new DefaultHandler());
+        SaxParsers.PoolStatistics before = SaxParsers.poolStatistics();
+
+        ElementRecorder recorder = new ElementRecorder();
+        SaxParsers.parseXml("<a><b/></a>", recorder);
+        SaxParsers.parseXml("<c/>", recorder);
+
+        SaxParsers.PoolStatistics after = SaxParsers.poolStatistics();
+        assertEquals(before.hits() + 2, after.hits());
+        assertEquals(before.misses(), after.misses());
+        assertEquals(3, recorder.names.size());
+    }
+
+    @Test
+    public void nestedParseGetsItsOwnParser() throws SAXException {
+        SaxParsers.parseXml("<a/>", new DefaultHandler());
+        SaxParsers.PoolStatistics before = SaxParsers.poolStatistics();
+        ElementRecorder inner = new ElementRecorder();
+
+        SaxParsers.parseXml("<outer/>", new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName,
+                    Attributes attributes) throws SAXException {
+                SaxParsers.parseXml("<inner/>", inner);
+            }
+        });
+
+        SaxParsers.PoolStatistics after = SaxParsers.poolStatistics();
+        assertEquals(before.hits() + 1, after.hits());
+        assertEquals(before.misses() + 1, after.misses());
+        assertEquals("inner", inner.names.get(0));
+    }
+
+    @Test
+    public void parserIsReusedAfterFailedParse() throws SAXException {
+        try {
+            SaxParsers.parseXml("<a><b></a>", new DefaultHandler());
+            fail("The document is not well-formed");
+        } catch (SAXException e) {
+            // Expected
+        }
+        SaxParsers.PoolStatistics before = SaxParsers.poolStatistics();
+
+        ElementRecorder recorder = new ElementRecorder();
+        SaxParsers.parseXml("<a><b/></a>", recorder);
+
+        assertEquals(before.hits() + 1, SaxParsers.poolStatistics().hits());
+        assertEquals(2, recorder.names.size());
+    }
+
+    private static class ElementRecorder extends DefaultHandler {
+        private final List<String> names = new ArrayList<>();
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                Attributes attributes) throws SAXException {
+            names.add(qName);
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public final class ValueCacheTest {
+
+    @Test
+    public void repeatedValuesAreShared() {
+        ValueCache cache = new ValueCache();
+        char[] a = "xEURx".toCharArray();
+        char[] b = "EUR".toCharArray();
+        String s = cache.string(a, 1, 3);
+        assertEquals("EUR", s);
+        assertSame(s, cache.string(b, 0, 3));
+        assertEquals("USD", cache.string("USD".toCharArray(), 0, 3));
+
+        LocalDate d = cache.localDate("2017-03-14".toCharArray(), 0, 10);
+        assertSame(d, cache.localDate("x2017-03-14".toCharArray(), 1, 10));
+    }
+
+    @Test
+    public void longValuesAreNotCached() {
+        ValueCache cache = new ValueCache();
+        char[] chars = new char[ValueCache.MAX_LENGTH + 1];
+        assertNotSame(cache.string(chars, 0, chars.length), cache.string(chars, 0, chars.length));
+    }
+
+    @Test
+    public void keptElementsKeepTheirValues() throws SAXException {
+        for (Engine engine : Engine.values()) {
+            Elements handler = new Elements();
+            ExhumeSaxParser parser = new ExhumeSaxParser(handler);
+            parser.setEngine(engine);
+            parser.parseXml("<Rates><Currency>EUR</Currency><Currency>USD</Currency>"
+                    + "<Currency>EUR</Currency></Rates>");
+            assertEquals("EUR", handler.elements.get(0).value());
+            assertEquals("USD", handler.elements.get(1).value());
+            assertEquals("EUR", handler.elements.get(2).value());
+            assertSame(handler.elements.get(0).value(), handler.elements.get(2).value());
+        }
+    }
+
+    static class Elements {
+        final List<EndOfElement> elements = new ArrayList<>();
+
+        @ElementEnd("/Rates/Currency")
+        void currency(EndOfElement eoe) {
+            elements.add(eoe);
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+package tzeth.exhume.sax;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import tzeth.exhume.ExhumeException;
+
+public final class ValueConvertersTest {
+    private static final String XML = "<Order>"
+            + "<Id>123e4567-e89b-12d3-a456-426655440000</Id>"
+            + "<Placed>2017-03-14T10:15:30Z</Placed>"
+            + "<Shipped>2017-03-15T08:00:00+01:00</Shipped>"
+            + "<Status>SHIPPED</Status>"
+            + "<Note>aGVs\nbG8=</Note>"
+            + "<Due>15.03.2017</Due>"
+            + "</Order>";
+
+    @Test
+    public void builtInTypes() throws SAXException {
+        for (Engine engine : Engine.values()) {
+            Order order = new Order();
+            ExhumeSaxParser parser = new ExhumeSaxParser(order);
+            parser.setEngine(engine);
+            parser.parseXml(XML);
+            assertEquals(UUID.fromString("123e4567-e89b-12d3-a456-426655440000"), order.id);
+            assertEquals(Instant.parse("2017-03-14T10:15:30Z"), order.placed);
+            assertEquals(OffsetDateTime.parse("2017-03-15T08:00:00+01:00"), order.shipped);
+            assertEquals(Status.SHIPPED, order.status);
+            assertArrayEquals("hello".getBytes(StandardCharsets.US_ASCII), order.note);
+        }
+    }
+
+    @Test
+    public void registeredConverter() throws SAXException {
+        CompiledParser parser = CompiledParser.builder()
+                .converter(LocalDate.class, (ch, start, length) -> LocalDate.of(
+                        CharParsers.parseInt(ch, start + 6, 4),
+                        CharParsers.parseInt(ch, start + 3, 2),
+                        CharParsers.parseInt(ch, start, 2)))
+                .handler(DueDates.class, DueDates::new)
+                .build();
+        DueDates dueDates = parser.parseXml(XML).handler(DueDates.class);
+        assertEquals(LocalDate.of(2017, 3, 15), dueDates.dates.get(0));
+    }
+
+    @Test(expected = ExhumeException.class)
+    public void unknownEnumConstantFails() throws SAXException {
+        new ExhumeSaxParser(new Order()).parseXml("<Order><Status>LOST</Status></Order>");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void typeWithoutConverterIsRejected() {
+        new ExhumeSaxParser(new Unsupported());
+    }
+
+    enum Status {
+        PLACED, SHIPPED
+    }
+
+    @RootPath("/Order")
+    static class Order {
+        UUID id;
+        Instant placed;
+        OffsetDateTime shipped;
+        Status status;
+        byte[] note;
+
+        @ElementEnd("Id")
+        void id(UUID id) {
+            this.id = id;
+        }
+
+        @ElementEnd("Placed")
+        void placed(Instant placed) {
+            this.placed = placed;
+        }
+
+        @ElementEnd("Shipped")
+        void shipped(OffsetDateTime shipped) {
+            this.shipped = shipped;
+        }
+
+        @ElementEnd("Status")
+        void status(Status status) {
+            this.status = status;
+        }
+
+        @ElementEnd("Note")
+        void note(byte[] note) {
+            this.note = note;
+        }
+    }
+
+    static class DueDates {
+        final List<LocalDate> dates = new ArrayList<>();
+
+        @ElementEnd(value = "/Order/Due", batchSize = 10)
+        void due(List<LocalDate> batch) {
+            dates.addAll(batch);
+        }
+    }
+
+    static class Unsupported {
+
+        @ElementEnd("/Order/Note")
+        void note(StringBuilder note) {/**/}
+    }
+
+}